@@ -1,5 +1,6 @@
 package com.klkt.supervision.config;
 
+import com.klkt.supervision.dto.AuthenticatedUser;
 import com.klkt.supervision.service.JwtService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -48,8 +49,9 @@ public class JwtAuthenticationFilter implements WebFilter {
         
         String token = authHeader.substring(7).trim();
         
-        // Validate token
-        if (token.isEmpty() || !jwtService.validateToken(token)) {
+        // Verify the token once; a token seen before is a single cache lookup
+        AuthenticatedUser user = token.isEmpty() ? null : jwtService.authenticate(token);
+        if (user == null) {
             log.warn("Invalid or expired JWT token for path: {}", path);
             exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
             exchange.getResponse().getHeaders().add("WWW-Authenticate", "Bearer");
@@ -57,18 +59,9 @@ public class JwtAuthenticationFilter implements WebFilter {
         }
         
         try {
-            // Extract user information from token
-            String username = jwtService.extractUsername(token);
-            Long userId = jwtService.extractUserId(token);
-            String role = jwtService.extractRole(token);
-            
-            // Validate extracted claims
-            if (username == null || username.isEmpty() || userId == null || role == null || role.isEmpty()) {
-                log.warn("Invalid token claims (missing username, userId, or role) for path: {}", path);
-                exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
-                exchange.getResponse().getHeaders().add("WWW-Authenticate", "Bearer");
-                return exchange.getResponse().setComplete();
-            }
+            String username = user.getUsername();
+            Long userId = user.getUserId();
+            String role = user.getRole();
             
             // Create authorities from role
             List<SimpleGrantedAuthority> authorities = Collections.singletonList(
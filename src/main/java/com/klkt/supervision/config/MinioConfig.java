@@ -22,10 +22,14 @@ public class MinioConfig {
         try {
             StorageProperties.MinioStorage minio = storageProperties.getMinio();
             
-            MinioClient minioClient = MinioClient.builder()
+            MinioClient.Builder builder = MinioClient.builder()
                     .endpoint(minio.getEndpoint())
-                    .credentials(minio.getAccessKey(), minio.getSecretKey())
-                    .build();
+                    .credentials(minio.getAccessKey(), minio.getSecretKey());
+            if (minio.getRegion() != null && !minio.getRegion().isEmpty()) {
+                // Known region: no bucket location lookup before the first presigned URL
+                builder.region(minio.getRegion());
+            }
+            MinioClient minioClient = builder.build();
             
             // Auto-create bucket if enabled
             if (minio.isAutoCreateBucket()) {
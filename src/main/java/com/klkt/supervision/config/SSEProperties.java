@@ -0,0 +1,35 @@
+package com.klkt.supervision.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "sse")
+public class SSEProperties {
+
+    private long timeout = 3600000; // 1 hour in milliseconds
+    private long heartbeatInterval = 30000; // 30 seconds
+
+    // Max events buffered for a single connection before the slow-consumer policy applies
+    private int bufferSize = 256;
+    private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DROP_OLDEST;
+
+    // Recent events kept per group / per user for Last-Event-ID resume
+    private int replayGroupBufferSize = 256;
+    private int replayUserBufferSize = 64;
+    private long replayIdleTtl = 600000; // buffers without events for this long (ms) are dropped, 10 minutes
+
+    // Cross-node fan-out: local (single instance) or postgres (LISTEN/NOTIFY)
+    private String eventBus = "local";
+    private int eventBusBatchSize = 100; // max envelopes per NOTIFY
+    private long eventBusBatchDelay = 20; // max milliseconds an envelope waits for its batch
+    private int eventBusQueueSize = 10000; // envelopes waiting for NOTIFY, more are dropped
+
+    public enum SlowConsumerPolicy {
+        DROP_OLDEST, // drop the oldest buffered event
+        COALESCE,    // drop new events and send a single resync_required event once the client catches up
+        DISCONNECT   // close the connection with a disconnect event
+    }
+}
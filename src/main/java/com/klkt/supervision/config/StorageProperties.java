@@ -13,6 +13,7 @@ public class StorageProperties {
     
     private LocalStorage local = new LocalStorage();
     private MinioStorage minio = new MinioStorage();
+    private Dedup dedup = new Dedup();
     
     @Data
     public static class LocalStorage {
@@ -26,5 +27,14 @@ public class StorageProperties {
         private String secretKey = "minioadmin";
         private String bucket = "chat-files";
         private boolean autoCreateBucket = true;
+        private String region; // optional, avoids the region lookup on first signing
+        private int presignedUrlExpiry = 60 * 60 * 24; // seconds, 24 hours
+        private double presignedUrlRefreshFraction = 0.5; // re-sign once this part of the lifetime has passed
+        private int presignedUrlCacheSize = 10000;
+    }
+    
+    @Data
+    public static class Dedup {
+        private boolean enabled = false; // store each unique content once under blobs/, reference counted
     }
 }
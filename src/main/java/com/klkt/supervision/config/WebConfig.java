@@ -2,6 +2,7 @@ package com.klkt.supervision.config;
 
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.multipart.DefaultPartHttpMessageReader;
 import org.springframework.web.reactive.config.CorsRegistry;
 import org.springframework.web.reactive.config.WebFluxConfigurer;
 
@@ -20,5 +21,12 @@ public class WebConfig implements WebFluxConfigurer {
     @Override
     public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
         configurer.defaultCodecs().maxInMemorySize(20 * 1024 * 1024); // 20MB
+        // Multipart parts larger than 1MB are spooled to temp files and streamed to storage,
+        // so uploads never sit whole in the heap
+        configurer.defaultCodecs().configureDefaultCodec(codec -> {
+            if (codec instanceof DefaultPartHttpMessageReader partReader) {
+                partReader.setMaxInMemorySize(1024 * 1024); // 1MB
+            }
+        });
     }
 }
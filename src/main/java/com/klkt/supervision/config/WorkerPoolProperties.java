@@ -0,0 +1,37 @@
+package com.klkt.supervision.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "workers")
+public class WorkerPoolProperties {
+    
+    private Pool storage = new Pool(32, 1000); // blocking file system and MinIO calls
+    private Pool image = new Pool(Runtime.getRuntime().availableProcessors(), 200); // CPU bound image decoding
+    private Pool password = new Pool(Math.max(2, Runtime.getRuntime().availableProcessors() / 2), 64); // BCrypt, ~100ms CPU each
+    private Uploads uploads = new Uploads(); // attachment uploads, shared fairly between users
+    
+    @Data
+    public static class Pool {
+        private int threads;
+        private int queueSize;
+        
+        public Pool() {
+        }
+        
+        public Pool(int threads, int queueSize) {
+            this.threads = threads;
+            this.queueSize = queueSize;
+        }
+    }
+    
+    @Data
+    public static class Uploads {
+        private int concurrency = 16; // across all requests
+        private int perRequest = 3; // files of one message uploaded at once
+        private int queueSize = 1000;
+    }
+}
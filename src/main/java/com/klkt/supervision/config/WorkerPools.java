@@ -0,0 +1,83 @@
+package com.klkt.supervision.config;
+
+import com.klkt.supervision.util.BoundedWorkerPool;
+import com.klkt.supervision.util.FairConcurrencyLimiter;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Worker pools for blocking work. Reactor Netty event-loop threads must only do non-blocking work.
+ */
+@Slf4j
+@Component
+public class WorkerPools {
+    
+    private final BoundedWorkerPool storage;
+    private final BoundedWorkerPool image;
+    private final BoundedWorkerPool password;
+    private final FairConcurrencyLimiter uploads;
+    
+    public WorkerPools(WorkerPoolProperties properties) {
+        this.storage = create("storage", properties.getStorage());
+        this.image = create("image", properties.getImage());
+        this.password = create("password", properties.getPassword());
+        
+        WorkerPoolProperties.Uploads limits = properties.getUploads();
+        this.uploads = new FairConcurrencyLimiter("uploads", limits.getConcurrency(), limits.getQueueSize());
+        log.info("Upload limiter started: {} concurrent, {} per request, queue {}",
+                limits.getConcurrency(), limits.getPerRequest(), limits.getQueueSize());
+    }
+    
+    /**
+     * File system and MinIO IO
+     */
+    public BoundedWorkerPool storage() {
+        return storage;
+    }
+    
+    /**
+     * Image decoding and encoding (thumbnails, renditions)
+     */
+    public BoundedWorkerPool image() {
+        return image;
+    }
+    
+    /**
+     * Password hashing and verification (BCrypt)
+     */
+    public BoundedWorkerPool password() {
+        return password;
+    }
+    
+    /**
+     * Attachment uploads, round-robin between users
+     */
+    public FairConcurrencyLimiter uploads() {
+        return uploads;
+    }
+    
+    public Map<String, Map<String, Object>> getStats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        stats.put(storage.getName(), storage.getStats());
+        stats.put(image.getName(), image.getStats());
+        stats.put(password.getName(), password.getStats());
+        stats.put(uploads.getName(), uploads.getStats());
+        return stats;
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        storage.dispose();
+        image.dispose();
+        password.dispose();
+    }
+    
+    private BoundedWorkerPool create(String name, WorkerPoolProperties.Pool pool) {
+        log.info("Worker pool '{}' started: {} threads, queue {}", name, pool.getThreads(), pool.getQueueSize());
+        return new BoundedWorkerPool(name, pool.getThreads(), pool.getQueueSize());
+    }
+}
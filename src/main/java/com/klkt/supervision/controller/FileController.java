@@ -1,11 +1,14 @@
 package com.klkt.supervision.controller;
 
 import com.klkt.supervision.config.StorageProperties;
+import com.klkt.supervision.config.WorkerPools;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -14,8 +17,12 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @RestController
@@ -26,13 +33,21 @@ import java.nio.file.Paths;
 public class FileController {
     
     private final StorageProperties storageProperties;
+    private final WorkerPools workerPools;
+    
+    // Stored names are UUIDs or content hashes: a URL always points at the same bytes
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable();
     
     /**
      * Serve files from /api/files/** path
+     * File system checks are blocking and run on the storage pool.
+     * 
+     * The ETag / Last-Modified headers let ResponseEntityResultHandler answer conditional requests with 304,
+     * and ResourceHttpMessageWriter answers Range requests with 206 and sends file regions zero-copy.
      */
-    @RequestMapping(value = "/**", method = RequestMethod.GET)
+    @RequestMapping(value = "/**", method = {RequestMethod.GET, RequestMethod.HEAD})
     public Mono<ResponseEntity<Resource>> serveFile(ServerWebExchange exchange) {
-        return Mono.fromCallable(() -> {
+        return workerPools.storage().submit(() -> {
             String requestPath = exchange.getRequest().getPath().value();
             log.debug("Request path: {}", requestPath);
             
@@ -46,27 +61,51 @@ public class FileController {
                 return ResponseEntity.notFound().build();
             }
             
-            Path rootLocation = Paths.get(storageProperties.getLocal().getUploadDir());
-            Path file = rootLocation.resolve(filePath);
-            Resource resource = new FileSystemResource(file);
+            Path rootLocation = Paths.get(storageProperties.getLocal().getUploadDir()).toAbsolutePath().normalize();
+            Path file = rootLocation.resolve(filePath).normalize();
             
-            log.debug("Looking for file: {} (absolute: {})", filePath, file.toAbsolutePath());
-            log.debug("File exists: {}, readable: {}", resource.exists(), resource.isReadable());
+            // Stay inside the upload directory and never expose hidden entries such as in-flight uploads
+            if (!file.startsWith(rootLocation) || isHidden(rootLocation.relativize(file))) {
+                log.warn("Rejected file path: {}", filePath);
+                return ResponseEntity.notFound().build();
+            }
             
-            if (resource.exists() && resource.isReadable()) {
-                String filename = file.getFileName().toString();
-                String contentType = determineContentType(filename);
-                log.info("Serving file: {} -> {}", filePath, file.toAbsolutePath());
-                return ResponseEntity.ok()
-                        .contentType(MediaType.parseMediaType(contentType))
-                        .body(resource);
-            } else {
-                log.warn("File not found: {} (resolved to: {})", filePath, file.toAbsolutePath());
+            // One stat call gives existence, type, size and modification time
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                log.warn("File not found: {} (resolved to: {})", filePath, file);
                 return ResponseEntity.notFound().build();
             }
+            if (!attributes.isRegularFile()) {
+                return ResponseEntity.notFound().build();
+            }
+            
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            String etag = "\"" + Long.toHexString(attributes.size()) + "-" + Long.toHexString(lastModified) + "\"";
+            String contentType = determineContentType(file.getFileName().toString());
+            log.debug("Serving file: {} -> {}", filePath, file);
+            
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType(contentType))
+                    .eTag(etag)
+                    .lastModified(lastModified)
+                    .cacheControl(IMMUTABLE)
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .body((Resource) new FileSystemResource(file));
         });
     }
     
+    private boolean isHidden(Path relativePath) {
+        for (Path segment : relativePath) {
+            if (segment.toString().startsWith(".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     private String determineContentType(String filename) {
         String lower = filename.toLowerCase();
         if (lower.endsWith(".jpg") || lower.endsWith(".jpeg")) {
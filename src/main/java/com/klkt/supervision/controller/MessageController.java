@@ -1,12 +1,16 @@
 package com.klkt.supervision.controller;
 
 import com.klkt.supervision.dto.MessageResponse;
+import com.klkt.supervision.dto.OpenUploadRequest;
 import com.klkt.supervision.dto.SendMessageRequest;
+import com.klkt.supervision.dto.UploadSessionResponse;
+import com.klkt.supervision.service.ChunkedUploadService;
 import com.klkt.supervision.service.MessageService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.multipart.FilePart;
@@ -21,6 +25,7 @@ import reactor.core.publisher.Mono;
 public class MessageController {
     
     private final MessageService messageService;
+    private final ChunkedUploadService chunkedUploadService;
     private final ObjectMapper objectMapper;
     
     @PostMapping
@@ -35,43 +40,61 @@ public class MessageController {
             @RequestPart("message") String messageJson,
             @RequestPart(value = "files", required = false) Flux<FilePart> files) {
         
-        log.info("=== Received upload request ===");
-        log.info("Message JSON (raw): {}", messageJson);
-        log.info("Message JSON length: {}", messageJson != null ? messageJson.length() : 0);
-        
-        return Mono.fromCallable(() -> {
-                    log.info("Parsing JSON string to SendMessageRequest...");
-                    SendMessageRequest request = objectMapper.readValue(messageJson, SendMessageRequest.class);
-                    log.info("Parsed successfully. InfoData is null: {}", request.getInfoData() == null);
-                    log.info("=== Parsed SendMessageRequest ===");
-                    log.info("GroupId: {}", request.getGroupId());
-                    log.info("SenderId: {}", request.getSenderId());
-                    log.info("Content: {}", request.getContent());
-                    log.info("MessageType: {}", request.getMessageType());
-                    if (request.getInfoData() != null) {
-                        log.info("InfoData: {}", request.getInfoData());
-                        Object locationObj = request.getInfoData().get("location");
-                        if (locationObj instanceof java.util.Map) {
-                            @SuppressWarnings("unchecked")
-                            java.util.Map<String, Object> location = (java.util.Map<String, Object>) locationObj;
-                            log.info("Location - Latitude: {}", location.get("latitude"));
-                            log.info("Location - Longitude: {}", location.get("longitude"));
-                            log.info("Location - LocationDetail: {}", location.get("locationDetail"));
-                        }
-                    } else {
-                        log.info("InfoData is null");
-                    }
-                    return request;
-                })
-                .flatMap(request -> 
-                        files != null 
-                            ? files.collectList().flatMap(fileList -> {
-                                    log.info("Processing {} files with attachments", fileList.size());
-                                    return messageService.sendMessageWithAttachments(request, fileList);
-                                })
-                            : messageService.sendMessage(request))
+        return Mono.fromCallable(() -> objectMapper.readValue(messageJson, SendMessageRequest.class))
+                // Parts go to the service as they arrive, it uploads them in order under the per-request limit
+                .flatMap(request -> files != null
+                        ? messageService.sendMessageWithAttachments(request, files)
+                        : messageService.sendMessage(request))
                 .doOnError(e -> log.error("Error sending message with files", e));
     }
+    
+    // ----- Resumable chunked uploads for large media -----
+    
+    @PostMapping("/uploads")
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<UploadSessionResponse> openUpload(
+            @Valid @RequestBody OpenUploadRequest request,
+            @RequestAttribute("userId") Long userId) {
+        return chunkedUploadService.open(userId, request.getFileName(), request.getFileSize());
+    }
+    
+    /**
+     * Raw chunk bytes as the request body (application/octet-stream)
+     */
+    @PutMapping("/uploads/{uploadId}/chunks/{index}")
+    public Mono<UploadSessionResponse> uploadChunk(
+            @PathVariable String uploadId,
+            @PathVariable int index,
+            @RequestAttribute("userId") Long userId,
+            @RequestBody Flux<DataBuffer> body) {
+        return chunkedUploadService.writeChunk(uploadId, userId, index, body);
+    }
+    
+    @GetMapping("/uploads/{uploadId}")
+    public Mono<UploadSessionResponse> getUpload(
+            @PathVariable String uploadId,
+            @RequestAttribute("userId") Long userId) {
+        return chunkedUploadService.getStatus(uploadId, userId);
+    }
+    
+    @DeleteMapping("/uploads/{uploadId}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public Mono<Void> cancelUpload(
+            @PathVariable String uploadId,
+            @RequestAttribute("userId") Long userId) {
+        return chunkedUploadService.cancel(uploadId, userId);
+    }
+    
+    /**
+     * Send a message with the completed uploads listed in uploadIds as attachments
+     */
+    @PostMapping("/uploads/complete")
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<MessageResponse> completeUploads(
+            @Valid @RequestBody SendMessageRequest request,
+            @RequestAttribute("userId") Long userId) {
+        return messageService.sendMessageWithUploads(request, userId);
+    }
 
 
 
@@ -80,8 +103,10 @@ public class MessageController {
             @PathVariable Long groupId,
             @RequestAttribute("userId") Long userId,
             @RequestParam(required = false, defaultValue = "0") Integer page,
-            @RequestParam(required = false, defaultValue = "50") Integer size) {
-        return messageService.getGroupMessages(groupId, userId, page, size);
+            @RequestParam(required = false, defaultValue = "50") Integer size,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after) {
+        return messageService.getGroupMessages(groupId, userId, page, size, before, after);
     }
     
     @GetMapping("/{messageId}")
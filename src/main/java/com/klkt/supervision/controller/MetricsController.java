@@ -0,0 +1,86 @@
+package com.klkt.supervision.controller;
+
+import com.klkt.supervision.config.WorkerPools;
+import com.klkt.supervision.service.ChunkedUploadService;
+import com.klkt.supervision.service.FileStorageService;
+import com.klkt.supervision.service.JwtService;
+import com.klkt.supervision.service.PresenceService;
+import com.klkt.supervision.service.SSEEventBus;
+import com.klkt.supervision.service.ThumbnailService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/metrics")
+@RequiredArgsConstructor
+public class MetricsController {
+    
+    private final WorkerPools workerPools;
+    private final ThumbnailService thumbnailService;
+    private final FileStorageService fileStorageService;
+    private final ChunkedUploadService chunkedUploadService;
+    private final JwtService jwtService;
+    private final PresenceService presenceService;
+    private final SSEEventBus eventBus;
+    
+    /**
+     * Active, queued and rejected tasks of the blocking worker pools
+     */
+    @GetMapping("/workers")
+    public Mono<Map<String, Map<String, Object>>> getWorkerStats() {
+        return Mono.just(workerPools.getStats());
+    }
+    
+    /**
+     * Background thumbnail pipeline: queued, generated, failed and overflowed thumbnails
+     */
+    @GetMapping("/thumbnails")
+    public Mono<Map<String, Object>> getThumbnailStats() {
+        return Mono.just(thumbnailService.getStats());
+    }
+    
+    /**
+     * Storage backend counters, e.g. presigned URL cache hits and misses in MinIO mode
+     */
+    @GetMapping("/storage")
+    public Mono<Map<String, Object>> getStorageStats() {
+        return Mono.just(fileStorageService.getStats());
+    }
+    
+    /**
+     * Open chunked upload sessions and their staged bytes
+     */
+    @GetMapping("/uploads")
+    public Mono<Map<String, Object>> getUploadStats() {
+        return Mono.just(chunkedUploadService.getStats());
+    }
+    
+    /**
+     * Verified-token cache of the JWT filter
+     */
+    @GetMapping("/auth")
+    public Mono<Map<String, Object>> getAuthStats() {
+        return Mono.just(jwtService.getStats());
+    }
+    
+    /**
+     * Presence: online users, pending offline transitions and batched status writes
+     */
+    @GetMapping("/presence")
+    public Mono<Map<String, Object>> getPresenceStats() {
+        return Mono.just(presenceService.getStats());
+    }
+    
+    /**
+     * SSE event bus: envelopes dropped for other nodes and LISTEN gaps in postgres mode
+     */
+    @GetMapping("/event-bus")
+    public Mono<Map<String, Object>> getEventBusStats() {
+        return Mono.just(eventBus.getStats());
+    }
+}
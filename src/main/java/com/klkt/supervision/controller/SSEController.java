@@ -29,11 +29,31 @@ public class SSEController {
      *     const message = JSON.parse(event.data);
      *     console.log('New message:', message);
      * });
+     * 
+     * On reconnect the browser sends the Last-Event-ID header and only missed events are replayed.
+     * Clients reconnecting manually can pass it as the lastEventId query parameter instead.
+     * A resync_required event means the gap is too old and the client should refetch messages.
      */
     @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<ServerSentEvent<String>> streamEvents(@RequestParam Long userId) {
+    public Flux<ServerSentEvent<String>> streamEvents(
+            @RequestParam Long userId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+            @RequestParam(value = "lastEventId", required = false) String lastEventIdParam) {
         log.info("SSE connection established for user {}", userId);
-        return sseService.subscribe(userId);
+        return sseService.subscribe(userId, parseEventId(
+                lastEventIdHeader != null ? lastEventIdHeader : lastEventIdParam));
+    }
+    
+    private Long parseEventId(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring invalid Last-Event-ID: {}", lastEventId);
+            return null;
+        }
     }
     
     /**
@@ -43,6 +63,7 @@ public class SSEController {
     public Mono<Map<String, Object>> getStatus() {
         return Mono.just(Map.of(
                 "connectedUsers", sseService.getConnectedUserCount(),
+                "connections", sseService.getConnectionCount(),
                 "status", "running"
         ));
     }
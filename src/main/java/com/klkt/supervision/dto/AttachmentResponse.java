@@ -16,6 +16,12 @@ public class AttachmentResponse {
     private String fileType;
     private Long fileSize;
     private String fileUrl;
-    private String thumbnailUrl;
+    private String thumbnailUrl; // 200px rendition of images
+    private String previewUrl; // 800px rendition of images
+    private String placeholder; // inline ~20px JPEG data URI of images, shown blurred until the thumbnail loads
+    private Integer width; // images and videos, read from the file header
+    private Integer height;
+    private Integer duration; // milliseconds, videos only
+    private String thumbnailStatus; // PENDING while the thumbnail is being generated, READY once thumbnailUrl is set
     private String infoData; // JSON string containing location info (lat, long, detail)
 }
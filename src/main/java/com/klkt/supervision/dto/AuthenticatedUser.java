@@ -0,0 +1,19 @@
+package com.klkt.supervision.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Verified identity carried by a JWT. Immutable, so one instance can be shared between requests.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public final class AuthenticatedUser {
+    
+    private final Long userId;
+    private final String username;
+    private final String role;
+    private final long expiresAt; // epoch milliseconds
+}
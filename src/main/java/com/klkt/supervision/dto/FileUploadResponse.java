@@ -17,4 +17,6 @@ public class FileUploadResponse {
     private Long fileSize;
     private String fileType;
     private String thumbnailUrl;
+    private String previewUrl; // set with thumbnailUrl when the renditions already exist (deduplicated image)
+    private String placeholder; // inline data URI of images, rendered during the upload
 }
@@ -0,0 +1,19 @@
+package com.klkt.supervision.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * URLs of the resized JPEG copies stored next to an original image
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageRenditions {
+    
+    private String thumbnailUrl; // 200px, chat lists
+    private String previewUrl; // 800px, full screen on mobile
+}
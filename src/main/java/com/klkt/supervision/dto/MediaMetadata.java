@@ -0,0 +1,20 @@
+package com.klkt.supervision.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Layout information of an uploaded image or video, null when unknown
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MediaMetadata {
+
+    private Integer width;
+    private Integer height;
+    private Integer duration; // milliseconds, videos only
+}
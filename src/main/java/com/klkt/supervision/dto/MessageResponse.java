@@ -23,4 +23,5 @@ public class MessageResponse {
     private String messageType;
     private List<AttachmentResponse> attachments;
     private LocalDateTime createdAt;
+    private String cursor; // keyset cursor for the before/after history parameters
 }
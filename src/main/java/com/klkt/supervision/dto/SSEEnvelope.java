@@ -0,0 +1,36 @@
+package com.klkt.supervision.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Unit of work carried by the SSE event bus between application nodes
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SSEEnvelope {
+
+    private String nodeId; // node that published the envelope
+    private Type type;
+    private Long groupId;
+    private List<Long> userIds;
+    private Long eventId;
+    private String eventType;
+    private String data; // SSE payload, already serialized to JSON by the publishing node
+    private Long overflowId; // set alone (with nodeId, eventType) when the envelope is in sse_event_overflow
+    private boolean liveOnly; // delivered to connected users only: no event ID, not kept for replay
+
+
+    public enum Type {
+        GROUP_EVENT, USER_EVENT, MEMBER_ADDED, MEMBER_REMOVED, ADMIN_ADDED, ADMIN_REMOVED,
+        // Presence between nodes (PresenceService): userIds claimed / released by the publishing node,
+        // its full claim list (periodic), and a status change (status name in data)
+        PRESENCE_CLAIMED, PRESENCE_RELEASED, PRESENCE_ANNOUNCED, PRESENCE_STATUS
+    }
+}
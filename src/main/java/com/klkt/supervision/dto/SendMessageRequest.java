@@ -7,6 +7,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
 import java.util.Map;
 
 @Data
@@ -29,4 +30,7 @@ public class SendMessageRequest {
     // Can be extended with other fields in the future without changing DTO
     @JsonProperty("infoData")
     private Map<String, Object> infoData;
+    
+    // Completed chunked uploads to attach (POST /api/messages/uploads/complete)
+    private List<String> uploadIds;
 }
@@ -0,0 +1,20 @@
+package com.klkt.supervision.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Public part of a user shown next to messages (no credentials)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SenderProfile {
+
+    private Long id;
+    private String displayName;
+    private String avatarUrl;
+}
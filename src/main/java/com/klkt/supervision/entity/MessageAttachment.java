@@ -27,6 +27,11 @@ public class MessageAttachment {
     private String fileUrl;
     private String storagePath;
     private String thumbnailUrl;
+    private String previewUrl;
+    private String placeholder; // data URI of a ~20px JPEG, images only
+    private Integer width;
+    private Integer height;
+    private Integer duration; // milliseconds, videos only
     private LocalDateTime createdAt;
     
     @Column("info_data")
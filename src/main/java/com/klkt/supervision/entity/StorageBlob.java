@@ -0,0 +1,30 @@
+package com.klkt.supervision.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+/**
+ * A unique file content stored once in content-addressed mode, shared by every attachment with the same hash
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table("storage_blobs")
+public class StorageBlob {
+    
+    @Id
+    private Long id;
+    
+    private String hash; // SHA-256 of the content, hex
+    private String storagePath; // blobs/<first 2 hex chars>/<hash>_<generation><ext>, chosen when the hash is registered
+    private Long fileSize;
+    private Integer refCount; // number of attachments pointing at this blob
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,27 @@
+package com.klkt.supervision.exception;
+
+/**
+ * Thrown when a bounded worker pool is saturated and cannot accept more work
+ */
+public class ServiceBusyException extends RuntimeException {
+    
+    private static final int DEFAULT_RETRY_AFTER_SECONDS = 1;
+    
+    private final int retryAfterSeconds;
+    
+    public ServiceBusyException(String message) {
+        this(message, DEFAULT_RETRY_AFTER_SECONDS);
+    }
+    
+    public ServiceBusyException(String message, int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+    
+    /**
+     * Sent to the client as the Retry-After header
+     */
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
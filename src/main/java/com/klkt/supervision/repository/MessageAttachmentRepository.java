@@ -1,12 +1,32 @@
 package com.klkt.supervision.repository;
 
 import com.klkt.supervision.entity.MessageAttachment;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
 
 @Repository
 public interface MessageAttachmentRepository extends R2dbcRepository<MessageAttachment, Long> {
     
     Flux<MessageAttachment> findByMessageId(Long messageId);
+    
+    Flux<MessageAttachment> findByMessageIdIn(Collection<Long> messageIds);
+    
+    /**
+     * One page of image attachments still waiting for a thumbnail and created before the given time,
+     * e.g. lost with the queue of a stopped instance
+     */
+    @Query("SELECT * FROM message_attachments WHERE thumbnail_url IS NULL AND file_type LIKE 'image/%' " +
+           "AND id > :afterId AND created_at < :createdBefore ORDER BY id LIMIT :limit")
+    Flux<MessageAttachment> findPendingThumbnails(Long afterId, LocalDateTime createdBefore, int limit);
+    
+    @Modifying
+    @Query("UPDATE message_attachments SET thumbnail_url = :thumbnailUrl, preview_url = :previewUrl WHERE id = :id")
+    Mono<Integer> updateRenditions(Long id, String thumbnailUrl, String previewUrl);
 }
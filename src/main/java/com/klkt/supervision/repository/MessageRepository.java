@@ -1,15 +1,41 @@
 package com.klkt.supervision.repository;
 
 import com.klkt.supervision.entity.Message;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 
+import java.time.LocalDateTime;
+
 @Repository
 public interface MessageRepository extends R2dbcRepository<Message, Long> {
     
-    Flux<Message> findByGroupIdOrderByCreatedAtDesc(Long groupId, Pageable pageable);
-    
     Flux<Message> findByGroupIdOrderByCreatedAtDesc(Long groupId);
+    
+    // Keyset pagination, served by idx_messages_group_created_id (group_id, created_at DESC, id DESC)
+    
+    @Query("SELECT * FROM messages WHERE group_id = :groupId " +
+           "ORDER BY created_at DESC, id DESC LIMIT :limit")
+    Flux<Message> findLatestByGroupId(Long groupId, int limit);
+    
+    /**
+     * page/size of older clients; the id tie-break keeps messages with the same created_at in one stable order
+     */
+    @Query("SELECT * FROM messages WHERE group_id = :groupId " +
+           "ORDER BY created_at DESC, id DESC LIMIT :limit OFFSET :offset")
+    Flux<Message> findPageByGroupId(Long groupId, int limit, long offset);
+    
+    @Query("SELECT * FROM messages WHERE group_id = :groupId " +
+           "AND (created_at, id) < (:createdAt, :id) " +
+           "ORDER BY created_at DESC, id DESC LIMIT :limit")
+    Flux<Message> findByGroupIdBefore(Long groupId, LocalDateTime createdAt, Long id, int limit);
+    
+    /**
+     * Oldest first: the messages directly following the cursor
+     */
+    @Query("SELECT * FROM messages WHERE group_id = :groupId " +
+           "AND (created_at, id) > (:createdAt, :id) " +
+           "ORDER BY created_at ASC, id ASC LIMIT :limit")
+    Flux<Message> findByGroupIdAfter(Long groupId, LocalDateTime createdAt, Long id, int limit);
 }
@@ -0,0 +1,203 @@
+package com.klkt.supervision.repository;
+
+import com.klkt.supervision.dto.SenderProfile;
+import com.klkt.supervision.entity.Message;
+import com.klkt.supervision.entity.MessageAttachment;
+import io.r2dbc.spi.Row;
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Message writes in plain SQL: statements spanning several tables and multi-row inserts.
+ * Transactions are left to the caller.
+ */
+@Repository
+@RequiredArgsConstructor
+public class MessageWriteRepository {
+
+    /*
+     * The message row is only produced when the sender is an ADMIN or a member of the group and the
+     * group exists; group_code is copied from the group and the sender profile comes back with the row.
+     */
+    private static final String INSERT_IF_ALLOWED = """
+            WITH sender AS (
+                SELECT u.id, u.display_name, u.avatar_url
+                FROM users u
+                WHERE u.id = :senderId
+                  AND (u.role = 'ADMIN' OR EXISTS (
+                        SELECT 1 FROM group_members gm
+                        WHERE gm.group_id = :groupId AND gm.user_id = u.id))
+            ), inserted AS (
+                INSERT INTO messages (group_id, group_code, sender_id, content, message_type, info_data,
+                                      created_at, updated_at)
+                SELECT g.id, g.group_code, s.id, :content, :messageType, :infoData, :createdAt, :createdAt
+                FROM groups g, sender s
+                WHERE g.id = :groupId
+                RETURNING *
+            )
+            SELECT i.*, s.display_name AS sender_display_name, s.avatar_url AS sender_avatar_url
+            FROM inserted i JOIN sender s ON s.id = i.sender_id
+            """;
+
+    private static final String INSERT_MESSAGE = """
+            INSERT INTO messages (id, group_id, group_code, sender_id, content, message_type, info_data,
+                                  created_at, updated_at)
+            VALUES (:id, :groupId, :groupCode, :senderId, :content, :messageType, :infoData, :createdAt, :createdAt)
+            """;
+
+    private static final String NEXT_ATTACHMENT_IDS = """
+            SELECT nextval(pg_get_serial_sequence('message_attachments', 'id')) AS id
+            FROM generate_series(1, :count)
+            """;
+
+    private static final String INSERT_ATTACHMENTS = """
+            INSERT INTO message_attachments (id, message_id, file_name, file_type, file_size, file_url, storage_path,
+                                             thumbnail_url, preview_url, placeholder, width, height, duration,
+                                             created_at, info_data)
+            VALUES %s
+            """;
+
+    private static final String ATTACHMENT_ROW = "(:id%1$d, :messageId%1$d, :fileName%1$d, :fileType%1$d, :fileSize%1$d, "
+            + ":fileUrl%1$d, :storagePath%1$d, :thumbnailUrl%1$d, :previewUrl%1$d, :placeholder%1$d, "
+            + ":width%1$d, :height%1$d, :duration%1$d, :createdAt%1$d, :infoData%1$d)";
+
+    private final DatabaseClient databaseClient;
+
+    /**
+     * Take the next message id from the sequence, e.g. to name storage folders before the row exists.
+     * An id that is never inserted only leaves a gap.
+     */
+    public Mono<Long> nextMessageId() {
+        return databaseClient.sql("SELECT nextval(pg_get_serial_sequence('messages', 'id')) AS id")
+                .map((row, metadata) -> row.get("id", Long.class))
+                .one();
+    }
+
+    /**
+     * Insert a message whose id was taken with nextMessageId
+     */
+    public Mono<Message> insert(Message message) {
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(INSERT_MESSAGE)
+                .bind("id", message.getId())
+                .bind("groupId", message.getGroupId())
+                .bind("senderId", message.getSenderId())
+                .bind("messageType", message.getMessageType().name())
+                .bind("createdAt", message.getCreatedAt());
+        spec = bindNullable(spec, "groupCode", message.getGroupCode(), String.class);
+        spec = bindNullable(spec, "content", message.getContent(), String.class);
+        spec = bindNullable(spec, "infoData", message.getInfoData(), String.class);
+
+        return spec.then()
+                .then(Mono.fromSupplier(() -> {
+                    message.setUpdatedAt(message.getCreatedAt());
+                    return message;
+                }));
+    }
+
+    /**
+     * Insert all attachments with one multi-row INSERT. The ids are taken from the sequence first and set on
+     * the attachments, so no id has to be matched back to its row (RETURNING does not promise row order).
+     */
+    public Mono<List<MessageAttachment>> insertAttachments(List<MessageAttachment> attachments) {
+        if (attachments.isEmpty()) {
+            return Mono.just(attachments);
+        }
+
+        return databaseClient.sql(NEXT_ATTACHMENT_IDS)
+                .bind("count", attachments.size())
+                .map((row, metadata) -> row.get("id", Long.class))
+                .all()
+                .collectList()
+                .flatMap(ids -> {
+                    for (int i = 0; i < attachments.size(); i++) {
+                        attachments.get(i).setId(ids.get(i));
+                    }
+                    return insertWithIds(attachments);
+                });
+    }
+
+    private Mono<List<MessageAttachment>> insertWithIds(List<MessageAttachment> attachments) {
+        StringBuilder rows = new StringBuilder();
+        for (int i = 0; i < attachments.size(); i++) {
+            rows.append(i > 0 ? ", " : "").append(String.format(ATTACHMENT_ROW, i));
+        }
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(String.format(INSERT_ATTACHMENTS, rows));
+        for (int i = 0; i < attachments.size(); i++) {
+            MessageAttachment attachment = attachments.get(i);
+            spec = spec.bind("id" + i, attachment.getId())
+                    .bind("messageId" + i, attachment.getMessageId())
+                    .bind("fileName" + i, attachment.getFileName())
+                    .bind("fileType" + i, attachment.getFileType())
+                    .bind("fileSize" + i, attachment.getFileSize())
+                    .bind("fileUrl" + i, attachment.getFileUrl())
+                    .bind("storagePath" + i, attachment.getStoragePath())
+                    .bind("createdAt" + i, attachment.getCreatedAt());
+            spec = bindNullable(spec, "thumbnailUrl" + i, attachment.getThumbnailUrl(), String.class);
+            spec = bindNullable(spec, "previewUrl" + i, attachment.getPreviewUrl(), String.class);
+            spec = bindNullable(spec, "placeholder" + i, attachment.getPlaceholder(), String.class);
+            spec = bindNullable(spec, "width" + i, attachment.getWidth(), Integer.class);
+            spec = bindNullable(spec, "height" + i, attachment.getHeight(), Integer.class);
+            spec = bindNullable(spec, "duration" + i, attachment.getDuration(), Integer.class);
+            spec = bindNullable(spec, "infoData" + i, attachment.getInfoData(), String.class);
+        }
+
+        return spec.then()
+                .thenReturn(attachments);
+    }
+
+    /**
+     * Insert the message in one round trip. Empty when the sender may not post to the group
+     * or the group does not exist; nothing is written in that case.
+     */
+    public Mono<SentMessage> insertIfAllowed(Message message) {
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(INSERT_IF_ALLOWED)
+                .bind("senderId", message.getSenderId())
+                .bind("groupId", message.getGroupId())
+                .bind("messageType", message.getMessageType().name())
+                .bind("createdAt", message.getCreatedAt());
+        spec = bindNullable(spec, "content", message.getContent(), String.class);
+        spec = bindNullable(spec, "infoData", message.getInfoData(), String.class);
+
+        return spec.map((row, metadata) -> new SentMessage(toMessage(row), toSender(row)))
+                .one();
+    }
+
+    private static <T> DatabaseClient.GenericExecuteSpec bindNullable(
+            DatabaseClient.GenericExecuteSpec spec, String name, T value, Class<T> type) {
+        return value != null ? spec.bind(name, value) : spec.bindNull(name, type);
+    }
+
+    private static Message toMessage(Row row) {
+        return Message.builder()
+                .id(row.get("id", Long.class))
+                .groupId(row.get("group_id", Long.class))
+                .groupCode(row.get("group_code", String.class))
+                .senderId(row.get("sender_id", Long.class))
+                .content(row.get("content", String.class))
+                .messageType(Message.MessageType.valueOf(row.get("message_type", String.class)))
+                .infoData(row.get("info_data", String.class))
+                .createdAt(row.get("created_at", LocalDateTime.class))
+                .updatedAt(row.get("updated_at", LocalDateTime.class))
+                .build();
+    }
+
+    private static SenderProfile toSender(Row row) {
+        return SenderProfile.builder()
+                .id(row.get("sender_id", Long.class))
+                .displayName(row.get("sender_display_name", String.class))
+                .avatarUrl(row.get("sender_avatar_url", String.class))
+                .build();
+    }
+
+    /**
+     * The stored message and the profile of its sender
+     */
+    public record SentMessage(Message message, SenderProfile sender) {
+    }
+}
@@ -0,0 +1,32 @@
+package com.klkt.supervision.repository;
+
+import com.klkt.supervision.entity.StorageBlob;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface StorageBlobRepository extends R2dbcRepository<StorageBlob, Long> {
+    
+    /**
+     * Register a blob with one reference, or add a reference to the existing blob with the same hash.
+     * The returned row holds the path to use; storagePath is only taken for a new blob.
+     */
+    @Query("INSERT INTO storage_blobs (hash, storage_path, file_size, ref_count, created_at) " +
+           "VALUES (:hash, :storagePath, :fileSize, 1, CURRENT_TIMESTAMP) " +
+           "ON CONFLICT (hash) DO UPDATE SET ref_count = storage_blobs.ref_count + 1 " +
+           "RETURNING *")
+    Mono<StorageBlob> addReference(String hash, String storagePath, Long fileSize);
+    
+    @Query("UPDATE storage_blobs SET ref_count = ref_count - 1 WHERE storage_path = :storagePath RETURNING *")
+    Mono<StorageBlob> releaseReference(String storagePath);
+    
+    /**
+     * Waits for a concurrent addReference on the row, which then keeps it
+     */
+    @Modifying
+    @Query("DELETE FROM storage_blobs WHERE id = :id AND ref_count <= 0")
+    Mono<Integer> deleteIfUnreferenced(Long id);
+}
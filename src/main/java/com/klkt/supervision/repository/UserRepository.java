@@ -1,14 +1,40 @@
 package com.klkt.supervision.repository;
 
+import com.klkt.supervision.dto.SenderProfile;
 import com.klkt.supervision.entity.User;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+
 @Repository
 public interface UserRepository extends R2dbcRepository<User, Long> {
     
     Mono<User> findByUsername(String username);
     
     Mono<Boolean> existsByUsername(String username);
+    
+    @Query("SELECT id FROM users WHERE role = :role")
+    Flux<Long> findIdsByRole(String role);
+    
+    @Query("SELECT id, display_name, avatar_url FROM users WHERE id = :id")
+    Mono<SenderProfile> findSenderProfileById(Long id);
+    
+    @Query("SELECT id, display_name, avatar_url FROM users WHERE id IN (:ids)")
+    Flux<SenderProfile> findSenderProfilesByIdIn(Collection<Long> ids);
+    
+    @Modifying
+    @Query("UPDATE users SET status = :status, updated_at = CURRENT_TIMESTAMP WHERE id IN (:ids)")
+    Mono<Integer> updateStatus(String status, Collection<Long> ids);
+    
+    /**
+     * Set OFFLINE every ONLINE user that no node claims (rows left by a crash or restart); AWAY / BUSY stay
+     */
+    @Query("UPDATE users SET status = 'OFFLINE', updated_at = CURRENT_TIMESTAMP " +
+           "WHERE status = 'ONLINE' AND NOT (id = ANY(:claimedIds)) RETURNING id")
+    Flux<Long> updateUnclaimedToOffline(Long[] claimedIds);
 }
@@ -0,0 +1,393 @@
+package com.klkt.supervision.service;
+
+import com.klkt.supervision.config.WorkerPools;
+import com.klkt.supervision.dto.UploadSessionResponse;
+import com.klkt.supervision.exception.ServiceBusyException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Resumable uploads for large media. A session stages numbered chunks in a file on local disk, in order;
+ * after a dropped connection the client asks for the offset and continues with the next chunk.
+ * Completed sessions are streamed into FileStorageService when the message is sent.
+ * Sessions and their staged files are local to the instance that opened them: with several instances the
+ * load balancer must route every request of an upload to that instance. Upload IDs start with the
+ * instance ID (uploads.instance-id) so the balancer can route on the path, and a request that still reaches
+ * another instance fails with an error naming the owner instead of a plain "not found".
+ */
+@Slf4j
+@Service
+public class ChunkedUploadService {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final Duration SWEEP_INTERVAL = Duration.ofMinutes(1);
+
+    private final WorkerPools workerPools;
+    private final String instanceId;
+    private final Path stagingDir;
+    private final int chunkSize;
+    private final long maxFileSize;
+    private final int maxSessions;
+    private final int maxSessionsPerUser;
+    private final long maxBytesPerUser;
+    private final Duration sessionTtl;
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    private final AtomicLong completedUploads = new AtomicLong();
+    private final AtomicLong expiredUploads = new AtomicLong();
+
+    private Disposable sweeper;
+
+    public ChunkedUploadService(WorkerPools workerPools,
+                                @Value("${uploads.instance-id:${HOSTNAME:}}") String instanceId,
+                                @Value("${uploads.staging-dir:${java.io.tmpdir}/app-supervision-chunks}") String stagingDir,
+                                @Value("${uploads.chunk-size:5242880}") int chunkSize,
+                                @Value("${uploads.max-file-size:1073741824}") long maxFileSize,
+                                @Value("${uploads.max-sessions:1000}") int maxSessions,
+                                @Value("${uploads.max-sessions-per-user:10}") int maxSessionsPerUser,
+                                @Value("${uploads.max-bytes-per-user:2147483648}") long maxBytesPerUser,
+                                @Value("${uploads.session-ttl:1800000}") long sessionTtlMillis) {
+        this.workerPools = workerPools;
+        this.instanceId = instanceId.isBlank() ? UUID.randomUUID().toString().substring(0, 8) : instanceId;
+        this.stagingDir = Paths.get(stagingDir);
+        this.chunkSize = chunkSize;
+        this.maxFileSize = maxFileSize;
+        this.maxSessions = maxSessions;
+        this.maxSessionsPerUser = maxSessionsPerUser;
+        this.maxBytesPerUser = maxBytesPerUser;
+        this.sessionTtl = Duration.ofMillis(sessionTtlMillis);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(stagingDir);
+        // Sessions do not survive a restart, their staged files are orphans
+        try (Stream<Path> leftovers = Files.list(stagingDir)) {
+            leftovers.forEach(this::deleteQuietly);
+        }
+
+        sweeper = Flux.interval(SWEEP_INTERVAL)
+                .subscribe(tick -> expireIdleSessions());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (sweeper != null) {
+            sweeper.dispose();
+        }
+    }
+
+    /**
+     * Sessions count against the global limit and the user's own limits (sessions and reserved bytes)
+     * from open until they are finished, cancelled or expired
+     */
+    public Mono<UploadSessionResponse> open(Long userId, String fileName, long fileSize) {
+        if (fileSize > maxFileSize) {
+            return Mono.error(new RuntimeException("File is too large, maximum is " + maxFileSize + " bytes"));
+        }
+
+        String uploadId = instanceId + "." + UUID.randomUUID();
+        UploadSession session = new UploadSession(uploadId, userId, fileName, fileSize, stagingDir.resolve(uploadId));
+        try {
+            reserve(session);
+        } catch (RuntimeException e) {
+            return Mono.error(e);
+        }
+
+        return workerPools.storage().submit(() -> Files.createFile(session.file))
+                .doOnError(e -> sessions.remove(uploadId))
+                .map(created -> {
+                    log.info("Upload session {} opened by user {}: {} ({} bytes)", uploadId, userId, fileName, fileSize);
+                    return toResponse(session);
+                });
+    }
+
+    public Mono<UploadSessionResponse> getStatus(String uploadId, Long userId) {
+        return Mono.fromCallable(() -> toResponse(findSession(uploadId, userId)));
+    }
+
+    /**
+     * Write chunk index at index * chunkSize. Chunks must arrive in order; a chunk that was already
+     * received is acknowledged without writing, so retrying after a lost response is safe.
+     * A chunk cut off midway does not move the offset and is simply sent again.
+     */
+    public Mono<UploadSessionResponse> writeChunk(String uploadId, Long userId, int index, Flux<DataBuffer> body) {
+        UploadSession session;
+        try {
+            session = findSession(uploadId, userId);
+        } catch (RuntimeException e) {
+            return body.doOnNext(DataBufferUtils::release).then(Mono.error(e));
+        }
+
+        int nextChunk = session.nextChunk();
+        if (index < nextChunk) {
+            return body.doOnNext(DataBufferUtils::release).then(Mono.fromSupplier(() -> toResponse(session)));
+        }
+        if (index > nextChunk) {
+            return body.doOnNext(DataBufferUtils::release)
+                    .then(Mono.error(new RuntimeException("Expected chunk " + nextChunk + ", got " + index)));
+        }
+        if (!session.state.compareAndSet(SessionState.IDLE, SessionState.WRITING)) {
+            return body.doOnNext(DataBufferUtils::release)
+                    .then(Mono.error(new RuntimeException("Upload " + uploadId + " is busy")));
+        }
+        if (session.nextChunk() != index) {
+            // Another request stored this chunk in the meantime
+            session.state.set(SessionState.IDLE);
+            return body.doOnNext(DataBufferUtils::release).then(Mono.fromSupplier(() -> toResponse(session)));
+        }
+
+        session.touch();
+        long position = (long) index * chunkSize;
+        long expected = Math.min(chunkSize, session.fileSize - position);
+        AtomicLong received = new AtomicLong();
+        Flux<DataBuffer> content = body.handle((buffer, sink) -> {
+            if (received.addAndGet(buffer.readableByteCount()) > expected) {
+                DataBufferUtils.release(buffer);
+                sink.error(new RuntimeException("Chunk " + index + " is larger than " + expected + " bytes"));
+            } else {
+                sink.next(buffer);
+            }
+        });
+
+        return Flux.using(
+                        () -> AsynchronousFileChannel.open(session.file, StandardOpenOption.WRITE),
+                        channel -> DataBufferUtils.write(content, channel, position),
+                        this::closeQuietly)
+                .doOnNext(DataBufferUtils::release)
+                .then(Mono.fromCallable(() -> {
+                    if (received.get() != expected) {
+                        throw new RuntimeException("Chunk " + index + " is incomplete: received "
+                                + received.get() + " of " + expected + " bytes");
+                    }
+                    session.offset = position + expected;
+                    session.touch();
+                    return toResponse(session);
+                }))
+                .doFinally(signal -> session.state.set(SessionState.IDLE));
+    }
+
+    /**
+     * Reserve completed uploads for a message. They stay staged until finish() or release()
+     */
+    public List<UploadSession> acquireCompleted(List<String> uploadIds, Long userId) {
+        List<UploadSession> acquired = new ArrayList<>();
+        try {
+            for (String uploadId : uploadIds) {
+                UploadSession session = findSession(uploadId, userId);
+                if (session.offset != session.fileSize) {
+                    throw new RuntimeException("Upload " + uploadId + " is not complete");
+                }
+                if (!session.state.compareAndSet(SessionState.IDLE, SessionState.FINALIZING)) {
+                    throw new RuntimeException("Upload " + uploadId + " is busy");
+                }
+                acquired.add(session);
+            }
+            return acquired;
+        } catch (RuntimeException e) {
+            release(acquired);
+            throw e;
+        }
+    }
+
+    /**
+     * Staged content of a completed upload
+     */
+    public Flux<DataBuffer> read(UploadSession session) {
+        return DataBufferUtils.read(session.file, DefaultDataBufferFactory.sharedInstance, READ_BUFFER_SIZE);
+    }
+
+    /**
+     * The message was stored: drop the sessions and their staged files
+     */
+    public void finish(List<UploadSession> uploads) {
+        uploads.forEach(session -> {
+            completedUploads.incrementAndGet();
+            discard(session);
+        });
+    }
+
+    /**
+     * Sending failed or was cancelled: the uploads stay available for another attempt
+     */
+    public void release(List<UploadSession> uploads) {
+        uploads.forEach(session -> {
+            session.touch();
+            session.state.set(SessionState.IDLE);
+        });
+    }
+
+    public Mono<Void> cancel(String uploadId, Long userId) {
+        return Mono.fromRunnable(() -> {
+            UploadSession session = findSession(uploadId, userId);
+            if (!session.state.compareAndSet(SessionState.IDLE, SessionState.FINALIZING)) {
+                throw new RuntimeException("Upload " + uploadId + " is busy");
+            }
+            discard(session);
+            log.info("Upload session {} cancelled", uploadId);
+        });
+    }
+
+    public Map<String, Object> getStats() {
+        long stagedBytes = sessions.values().stream().mapToLong(session -> session.offset).sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("activeSessions", sessions.size());
+        stats.put("stagedBytes", stagedBytes);
+        stats.put("completed", completedUploads.get());
+        stats.put("expired", expiredUploads.get());
+        return stats;
+    }
+
+    private void expireIdleSessions() {
+        long cutoff = System.currentTimeMillis() - sessionTtl.toMillis();
+        for (UploadSession session : sessions.values()) {
+            if (session.lastActivity < cutoff
+                    && session.state.compareAndSet(SessionState.IDLE, SessionState.FINALIZING)) {
+                log.info("Upload session {} expired after {} ms idle", session.uploadId, sessionTtl.toMillis());
+                expiredUploads.incrementAndGet();
+                discard(session);
+            }
+        }
+    }
+
+    /**
+     * Check the limits and register the session in one step, so parallel opens cannot overshoot them
+     */
+    private synchronized void reserve(UploadSession session) {
+        if (sessions.size() >= maxSessions) {
+            throw new ServiceBusyException("Too many uploads in progress");
+        }
+        int userSessions = 0;
+        long userBytes = 0;
+        for (UploadSession other : sessions.values()) {
+            if (other.userId.equals(session.userId)) {
+                userSessions++;
+                userBytes += other.fileSize;
+            }
+        }
+        if (userSessions >= maxSessionsPerUser) {
+            throw new RuntimeException("Too many open uploads, maximum is " + maxSessionsPerUser + " per user");
+        }
+        if (userBytes + session.fileSize > maxBytesPerUser) {
+            throw new RuntimeException("Open uploads exceed " + maxBytesPerUser + " bytes per user");
+        }
+        sessions.put(session.uploadId, session);
+    }
+
+    private void discard(UploadSession session) {
+        sessions.remove(session.uploadId);
+        workerPools.storage()
+                .submit(() -> Files.deleteIfExists(session.file))
+                .subscribe(deleted -> { }, e -> log.warn("Failed to delete staged upload {}", session.file));
+    }
+
+    private UploadSession findSession(String uploadId, Long userId) {
+        UploadSession session = sessions.get(uploadId);
+        int separator = uploadId.lastIndexOf('.');
+        if (session == null && separator > 0 && !uploadId.substring(0, separator).equals(instanceId)) {
+            throw new RuntimeException("Upload session is held by instance " + uploadId.substring(0, separator)
+                    + ", requests for an upload must go to the instance that opened it");
+        }
+        if (session == null || !session.userId.equals(userId)) {
+            throw new RuntimeException("Upload session not found");
+        }
+        return session;
+    }
+
+    private UploadSessionResponse toResponse(UploadSession session) {
+        long expiresAt = session.lastActivity + sessionTtl.toMillis();
+        return UploadSessionResponse.builder()
+                .uploadId(session.uploadId)
+                .fileName(session.fileName)
+                .fileSize(session.fileSize)
+                .chunkSize(chunkSize)
+                .chunkCount((int) ((session.fileSize + chunkSize - 1) / chunkSize))
+                .offset(session.offset)
+                .nextChunk(session.nextChunk())
+                .completed(session.offset == session.fileSize)
+                .expiresAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(expiresAt), ZoneId.systemDefault()))
+                .build();
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete staged upload {}", file);
+        }
+    }
+
+    private void closeQuietly(AsynchronousFileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close staged upload channel", e);
+        }
+    }
+
+    private enum SessionState {
+        IDLE, WRITING, FINALIZING
+    }
+
+    public class UploadSession {
+
+        private final String uploadId;
+        private final Long userId;
+        @Getter
+        private final String fileName;
+        private final long fileSize;
+        private final Path file;
+        private final AtomicReference<SessionState> state = new AtomicReference<>(SessionState.IDLE);
+        private volatile long offset;
+        private volatile long lastActivity = System.currentTimeMillis();
+
+        private UploadSession(String uploadId, Long userId, String fileName, long fileSize, Path file) {
+            this.uploadId = uploadId;
+            this.userId = userId;
+            this.fileName = fileName;
+            this.fileSize = fileSize;
+            this.file = file;
+        }
+
+        /**
+         * The offset is a multiple of the chunk size until the last chunk is in
+         */
+        private int nextChunk() {
+            return (int) ((offset + chunkSize - 1) / chunkSize);
+        }
+
+        private void touch() {
+            lastActivity = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.klkt.supervision.service;
+
+import com.klkt.supervision.config.WorkerPools;
+import com.klkt.supervision.dto.FileUploadResponse;
+import com.klkt.supervision.dto.ImageRenditions;
+import com.klkt.supervision.entity.StorageBlob;
+import com.klkt.supervision.repository.StorageBlobRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Backend operations used by the content-addressed mode. Methods are blocking and called on the storage pool.
+ */
+interface BlobStore {
+    Path tempDirectory();
+    boolean exists(String storagePath) throws Exception;
+    void write(Path source, String storagePath, String contentType) throws Exception;
+    void delete(String storagePath) throws Exception;
+    String urlOf(String storagePath);
+}
+
+/**
+ * Content-addressed mode of FileStorageService (storage.dedup.enabled).
+ * Uploads are hashed while streamed to a temp file and each unique content is stored once under
+ * blobs/ab/<sha256>_<generation><ext>; storage_blobs is keyed by hash only and counts the attachments
+ * referencing it. The extension of the first upload is kept in the path so the file is served with its type.
+ * The hash is only known once the whole upload has arrived, so a duplicate is still written to the temp
+ * file in full: the price is local disk I/O, in exchange for never holding an upload in memory. What a hit
+ * saves is the storage write, and for images the renditions, which are reused instead of generated again.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+class ContentAddressedStorage {
+
+    static final String BLOB_PREFIX = "blobs/";
+
+    private final StorageBlobRepository blobRepository;
+    private final WorkerPools workerPools;
+
+    static boolean isBlobPath(String storagePath) {
+        return storagePath.startsWith(BLOB_PREFIX);
+    }
+
+    Mono<FileUploadResponse> upload(Flux<DataBuffer> source, String fileName, String extension,
+                                    String contentType, BlobStore store) {
+        MessageDigest digest = sha256();
+        AtomicLong fileSize = new AtomicLong();
+        AtomicReference<String> placeholder = new AtomicReference<>();
+        AtomicReference<ImageRenditions> renditions = new AtomicReference<>();
+        Flux<DataBuffer> content = source
+                .doOnNext(buffer -> {
+                    fileSize.addAndGet(buffer.readableByteCount());
+                    try (DataBuffer.ByteBufferIterator buffers = buffer.readableByteBuffers()) {
+                        buffers.forEachRemaining(digest::update);
+                    }
+                });
+
+        return workerPools.storage().submit(() -> {
+                    Files.createDirectories(store.tempDirectory());
+                    return Files.createTempFile(store.tempDirectory(), "upload-", extension);
+                })
+                .flatMap(tempFile -> DataBufferUtils.write(content, tempFile, StandardOpenOption.WRITE)
+                        // Before storeBlob: the local store moves the temp file into place
+                        .then(Mono.defer(() -> FileStorageService.renderPlaceholder(workerPools, tempFile, contentType)
+                                .doOnNext(placeholder::set)
+                                .then()))
+                        .then(Mono.defer(() -> storeBlob(HexFormat.of().formatHex(digest.digest()), tempFile,
+                                fileName, extension, contentType, fileSize.get(), store, renditions)))
+                        .doFinally(signal -> workerPools.storage()
+                                .submit(() -> Files.deleteIfExists(tempFile))
+                                .subscribe(deleted -> { }, e -> log.warn("Failed to delete temp file {}", tempFile))))
+                .map(blob -> FileUploadResponse.builder()
+                        .fileName(fileName)
+                        .fileUrl(store.urlOf(blob.getStoragePath()))
+                        .storagePath(blob.getStoragePath())
+                        .fileSize(fileSize.get())
+                        .fileType(contentType)
+                        .placeholder(placeholder.get())
+                        .thumbnailUrl(renditions.get() != null ? renditions.get().getThumbnailUrl() : null)
+                        .previewUrl(renditions.get() != null ? renditions.get().getPreviewUrl() : null)
+                        .build());
+    }
+
+    /**
+     * Take the reference before looking at the object: a blob with references is never deleted,
+     * so an object found here stays. The row decides the path, whatever extension this upload has.
+     * On a hit, renditions already generated for the blob are handed back so the image is READY at once.
+     */
+    private Mono<StorageBlob> storeBlob(String hash, Path tempFile, String fileName, String extension,
+                                        String contentType, long fileSize, BlobStore store,
+                                        AtomicReference<ImageRenditions> renditions) {
+        String candidatePath = newBlobPath(hash, extension);
+        return blobRepository.addReference(hash, candidatePath, fileSize)
+                .flatMap(blob -> workerPools.storage().submit(() -> {
+                            String blobPath = blob.getStoragePath();
+                            // Also written when another upload registered the blob but has not stored it (yet)
+                            if (candidatePath.equals(blobPath) || !store.exists(blobPath)) {
+                                store.write(tempFile, blobPath, contentType);
+                                log.info("Stored new blob {} ({} bytes)", blobPath, fileSize);
+                            } else {
+                                log.info("Deduplicated upload {} -> {}", fileName, blobPath);
+                                if (contentType.startsWith("image/")) {
+                                    renditions.set(existingRenditions(blobPath, store));
+                                }
+                            }
+                            return blob;
+                        })
+                        .onErrorResume(e -> release(blob.getStoragePath(), store).then(Mono.<StorageBlob>error(e))));
+    }
+
+    /**
+     * Drop one reference; the blob and its renditions are removed with the last one.
+     * The object is only deleted once its row is gone. An upload racing with the delete either added its
+     * reference first (the row stays) or finds no row and registers a new blob under a new path,
+     * so no reference can point at the deleted object.
+     */
+    Mono<Void> release(String storagePath, BlobStore store) {
+        return blobRepository.releaseReference(storagePath)
+                .filter(blob -> blob.getRefCount() <= 0)
+                .flatMap(blob -> blobRepository.deleteIfUnreferenced(blob.getId()))
+                .filter(deleted -> deleted > 0)
+                .flatMap(deleted -> workerPools.storage().submit(() -> {
+                    store.delete(storagePath);
+                    store.delete(FileStorageService.renditionPath(storagePath, FileStorageService.THUMBNAIL_SIZE));
+                    store.delete(FileStorageService.renditionPath(storagePath, FileStorageService.PREVIEW_SIZE));
+                    log.info("Blob deleted, no references left: {}", storagePath);
+                    return null;
+                }))
+                .onErrorResume(e -> {
+                    log.error("Failed to release blob {}", storagePath, e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /**
+     * Renditions of a stored blob, or null while the thumbnail pipeline has not written both yet
+     */
+    private static ImageRenditions existingRenditions(String blobPath, BlobStore store) throws Exception {
+        String thumbnailPath = FileStorageService.renditionPath(blobPath, FileStorageService.THUMBNAIL_SIZE);
+        String previewPath = FileStorageService.renditionPath(blobPath, FileStorageService.PREVIEW_SIZE);
+        if (!store.exists(thumbnailPath) || !store.exists(previewPath)) {
+            return null;
+        }
+        return ImageRenditions.builder()
+                .thumbnailUrl(store.urlOf(thumbnailPath))
+                .previewUrl(store.urlOf(previewPath))
+                .build();
+    }
+
+    /**
+     * Path of a blob registered now. Each registration of a hash gets its own path, so an object being
+     * deleted for a released blob is never the one a later registration of the same content uses.
+     */
+    private static String newBlobPath(String hash, String extension) {
+        String generation = UUID.randomUUID().toString().substring(0, 8);
+        return BLOB_PREFIX + hash.substring(0, 2) + "/" + hash + "_" + generation + extension;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
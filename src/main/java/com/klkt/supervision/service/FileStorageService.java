@@ -1,29 +1,111 @@
 package com.klkt.supervision.service;
 
 import com.klkt.supervision.config.StorageProperties;
+import com.klkt.supervision.config.WorkerPools;
 import com.klkt.supervision.dto.FileUploadResponse;
+import com.klkt.supervision.dto.ImageRenditions;
+import com.klkt.supervision.exception.ServiceBusyException;
+import com.klkt.supervision.util.ExpiringCache;
+import com.klkt.supervision.util.ImageResizer;
+import io.minio.GetObjectArgs;
 import io.minio.GetPresignedObjectUrlArgs;
 import io.minio.MinioClient;
 import io.minio.PutObjectArgs;
 import io.minio.RemoveObjectArgs;
+import io.minio.StatObjectArgs;
+import io.minio.errors.ErrorResponseException;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 public interface FileStorageService {
-    Mono<FileUploadResponse> uploadFile(FilePart filePart, String folder);
+    default Mono<FileUploadResponse> uploadFile(FilePart filePart, String folder) {
+        return uploadContent(filePart.content(), filePart.filename(), folder);
+    }
+    
+    /**
+     * Store a file streamed from any source: a multipart part or a completed chunked upload
+     */
+    Mono<FileUploadResponse> uploadContent(Flux<DataBuffer> content, String fileName, String folder);
     Mono<String> getFileUrl(String storagePath);
+    
+    /**
+     * URLs of several files at once, keyed by storage path
+     */
+    Mono<Map<String, String>> getFileUrls(Collection<String> storagePaths);
     Mono<Void> deleteFile(String storagePath);
+    
+    /**
+     * Create the thumbnail and preview renditions of a stored image, stored next to the original
+     */
+    Mono<ImageRenditions> generateRenditions(String storagePath);
+    
+    int THUMBNAIL_SIZE = 200;
+    int PREVIEW_SIZE = 800;
+    int PLACEHOLDER_SIZE = 20;
+    
+    /**
+     * Counters exposed on /api/metrics/storage
+     */
+    default Map<String, Object> getStats() {
+        return Map.of();
+    }
+    
+    /**
+     * Data URI of a PLACEHOLDER_SIZE JPEG of an image being uploaded, rendered on the image pool from the
+     * local copy the upload already has (never from a download of the stored object).
+     * Optional: empty for other files, on failure and when the image pool is busy.
+     */
+    static Mono<String> renderPlaceholder(WorkerPools workerPools, Path localCopy, String contentType) {
+        if (!contentType.startsWith("image/")) {
+            return Mono.empty();
+        }
+        return workerPools.image().submit(() -> {
+                    try (ImageInputStream input = ImageIO.createImageInputStream(localCopy.toFile())) {
+                        return ImageResizer.renderPlaceholder(input, PLACEHOLDER_SIZE);
+                    }
+                })
+                .onErrorResume(e -> {
+                    LoggerFactory.getLogger(FileStorageService.class)
+                            .warn("Failed to render placeholder for {}: {}", localCopy, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+    
+    /**
+     * folder/abc.png -> folder/abc_200.jpg
+     */
+    static String renditionPath(String storagePath, int size) {
+        int lastDot = storagePath.lastIndexOf('.');
+        String base = lastDot > storagePath.lastIndexOf('/') ? storagePath.substring(0, lastDot) : storagePath;
+        return base + "_" + size + ".jpg";
+    }
 }
 
 // ============= MinIO Implementation =============
@@ -31,92 +113,252 @@ public interface FileStorageService {
 @Slf4j
 @Service
 @ConditionalOnProperty(name = "storage.type", havingValue = "minio")
-class MinioFileStorageService implements FileStorageService {
+class MinioFileStorageService implements FileStorageService, BlobStore {
     
     private final MinioClient minioClient;
     private final StorageProperties storageProperties;
+    private final WorkerPools workerPools;
+    private final ContentAddressedStorage contentAddressedStorage;
+    private final ExpiringCache<String, String> presignedUrls;
+    private final AtomicLong signedUrls = new AtomicLong();
     
-    public MinioFileStorageService(MinioClient minioClient, StorageProperties storageProperties) {
+    public MinioFileStorageService(MinioClient minioClient, StorageProperties storageProperties,
+                                   WorkerPools workerPools, ContentAddressedStorage contentAddressedStorage) {
         this.minioClient = minioClient;
         this.storageProperties = storageProperties;
+        this.workerPools = workerPools;
+        this.contentAddressedStorage = contentAddressedStorage;
+        this.presignedUrls = new ExpiringCache<>(storageProperties.getMinio().getPresignedUrlCacheSize());
     }
     
     @Override
-    public Mono<FileUploadResponse> uploadFile(FilePart filePart, String folder) {
-        String originalFilename = filePart.filename();
+    public Mono<FileUploadResponse> uploadContent(Flux<DataBuffer> source, String originalFilename, String folder) {
         String extension = getFileExtension(originalFilename);
+        if (storageProperties.getDedup().isEnabled()) {
+            return contentAddressedStorage.upload(source, originalFilename, extension, getContentType(extension), this)
+                    .onErrorMap(e -> !(e instanceof ServiceBusyException),
+                            e -> new RuntimeException("Failed to upload file to MinIO", e));
+        }
+        
         String uniqueFilename = UUID.randomUUID() + extension;
         String objectName = folder + "/" + uniqueFilename;
-        String bucket = storageProperties.getMinio().getBucket();
         
-        // Convert DataBuffer to byte array reactively
-        return DataBufferUtils.join(filePart.content())
-                .map(dataBuffer -> {
-                    byte[] bytes = new byte[dataBuffer.readableByteCount()];
-                    dataBuffer.read(bytes);
-                    DataBufferUtils.release(dataBuffer);
-                    return bytes;
+        AtomicLong fileSize = new AtomicLong();
+        Flux<DataBuffer> content = source
+                .doOnNext(buffer -> fileSize.addAndGet(buffer.readableByteCount()));
+        
+        return uploadSpooled(content, originalFilename, objectName, getContentType(extension), fileSize)
+                .onErrorMap(e -> !(e instanceof ServiceBusyException),
+                        e -> new RuntimeException("Failed to upload file to MinIO", e));
+    }
+    
+    /**
+     * Uploads are spooled to a temp file at network speed, then written to MinIO with a known size on the
+     * storage pool: a slow client holds no storage thread, only disk space. For images the inline placeholder
+     * is rendered from the same file while the object is uploaded, instead of reading the object back.
+     * Image renditions are created afterwards by ThumbnailService; videos have none.
+     */
+    private Mono<FileUploadResponse> uploadSpooled(Flux<DataBuffer> content, String originalFilename,
+                                                   String objectName, String contentType, AtomicLong fileSize) {
+        Path tempDirectory = tempDirectory();
+        AtomicReference<String> placeholder = new AtomicReference<>();
+        return workerPools.storage().submit(() -> {
+                    Files.createDirectories(tempDirectory);
+                    return Files.createTempFile(tempDirectory, "upload-", null);
                 })
-                .flatMap(bytes -> Mono.fromCallable(() -> {
-                    InputStream inputStream = new java.io.ByteArrayInputStream(bytes);
-                    long fileSize = bytes.length;
-                    
-                    // Upload to MinIO
-                    minioClient.putObject(
-                            PutObjectArgs.builder()
-                                    .bucket(bucket)
-                                    .object(objectName)
-                                    .stream(inputStream, fileSize, -1)
-                                    .contentType(getContentType(extension))
-                                    .build()
-                    );
-                    
-                    inputStream.close();
-                    
-                        String fileUrl = storageProperties.getMinio().getEndpoint() + 
-                                       "/" + bucket + "/" + objectName;
-                        
-                        // Generate thumbnail for images
-                        String thumbnailUrl = null;
-                        String fileType = getContentType(extension);
-                        if (fileType.startsWith("image/")) {
-                            // For MinIO, use original image as thumbnail
-                            // In production, you might want to generate and upload a resized version
-                            thumbnailUrl = fileUrl;
-                        }
-                        // For videos, thumbnail will be null - frontend will handle it
-                        
-                        log.info("File uploaded to MinIO: {}", objectName);
-                        
-                        return FileUploadResponse.builder()
-                                .fileName(originalFilename)
-                                .fileUrl(fileUrl)
-                                .storagePath(objectName)
-                                .fileSize(fileSize)
-                                .fileType(fileType)
-                                .thumbnailUrl(thumbnailUrl)
-                                .build();
-                }).onErrorMap(e -> new RuntimeException("Failed to upload file to MinIO", e)));
+                .flatMap(tempFile -> DataBufferUtils.write(content, tempFile, StandardOpenOption.WRITE)
+                        .then(Mono.defer(() -> {
+                            Mono<String> upload = workerPools.storage().submit(() -> {
+                                write(tempFile, objectName, contentType);
+                                return objectName;
+                            });
+                            if (!contentType.startsWith("image/")) {
+                                return upload.then();
+                            }
+                            return Mono.when(
+                                    FileStorageService.renderPlaceholder(workerPools, tempFile, contentType)
+                                            .doOnNext(placeholder::set),
+                                    upload);
+                        }))
+                        .doFinally(signal -> workerPools.storage()
+                                .submit(() -> Files.deleteIfExists(tempFile))
+                                .subscribe(deleted -> { }, e -> log.warn("Failed to delete temp file {}", tempFile))))
+                .then(Mono.fromSupplier(() -> {
+                    log.info("File uploaded to MinIO: {} ({} bytes)", objectName, fileSize.get());
+                    return FileUploadResponse.builder()
+                            .fileName(originalFilename)
+                            .fileUrl(objectUrl(objectName))
+                            .storagePath(objectName)
+                            .fileSize(fileSize.get())
+                            .fileType(contentType)
+                            .placeholder(placeholder.get())
+                            .build();
+                }));
     }
     
+    /**
+     * Stream the original from MinIO into a subsampled decode and upload the renditions next to it
+     */
     @Override
-    public Mono<String> getFileUrl(String storagePath) {
-        return Mono.fromCallable(() -> {
-            String bucket = storageProperties.getMinio().getBucket();
-            return minioClient.getPresignedObjectUrl(
-                    GetPresignedObjectUrlArgs.builder()
-                            .method(io.minio.http.Method.GET)
-                            .bucket(bucket)
+    public Mono<ImageRenditions> generateRenditions(String storagePath) {
+        String bucket = storageProperties.getMinio().getBucket();
+        
+        return workerPools.image().submit(() -> {
+            Map<Integer, byte[]> renditions;
+            try (InputStream original = minioClient.getObject(
+                         GetObjectArgs.builder().bucket(bucket).object(storagePath).build());
+                 ImageInputStream input = ImageIO.createImageInputStream(original)) {
+                renditions = ImageResizer.renderJpegs(input, THUMBNAIL_SIZE, PREVIEW_SIZE);
+            }
+            
+            for (Map.Entry<Integer, byte[]> rendition : renditions.entrySet()) {
+                byte[] bytes = rendition.getValue();
+                minioClient.putObject(
+                        PutObjectArgs.builder()
+                                .bucket(bucket)
+                                .object(FileStorageService.renditionPath(storagePath, rendition.getKey()))
+                                .stream(new java.io.ByteArrayInputStream(bytes), bytes.length, -1)
+                                .contentType("image/jpeg")
+                                .build()
+                );
+            }
+            
+            log.info("Renditions uploaded to MinIO for {}", storagePath);
+            return ImageRenditions.builder()
+                    .thumbnailUrl(objectUrl(FileStorageService.renditionPath(storagePath, THUMBNAIL_SIZE)))
+                    .previewUrl(objectUrl(FileStorageService.renditionPath(storagePath, PREVIEW_SIZE)))
+                    .build();
+        });
+    }
+    
+    private String objectUrl(String objectName) {
+        return storageProperties.getMinio().getEndpoint() + "/" +
+                storageProperties.getMinio().getBucket() + "/" + objectName;
+    }
+    
+    // ----- BlobStore (content-addressed mode) -----
+    
+    @Override
+    public Path tempDirectory() {
+        return Paths.get(System.getProperty("java.io.tmpdir"), "app-supervision-uploads");
+    }
+    
+    @Override
+    public boolean exists(String storagePath) throws Exception {
+        try {
+            minioClient.statObject(StatObjectArgs.builder()
+                    .bucket(storageProperties.getMinio().getBucket())
+                    .object(storagePath)
+                    .build());
+            return true;
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                return false;
+            }
+            throw e;
+        }
+    }
+    
+    @Override
+    public void write(Path source, String storagePath, String contentType) throws Exception {
+        try (InputStream inputStream = Files.newInputStream(source)) {
+            minioClient.putObject(
+                    PutObjectArgs.builder()
+                            .bucket(storageProperties.getMinio().getBucket())
                             .object(storagePath)
-                            .expiry(60 * 60 * 24) // 24 hours
+                            .stream(inputStream, Files.size(source), -1)
+                            .contentType(contentType)
                             .build()
             );
+        }
+    }
+    
+    @Override
+    public void delete(String storagePath) throws Exception {
+        minioClient.removeObject(RemoveObjectArgs.builder()
+                .bucket(storageProperties.getMinio().getBucket())
+                .object(storagePath)
+                .build());
+    }
+    
+    @Override
+    public String urlOf(String storagePath) {
+        return objectUrl(storagePath);
+    }
+    
+    /**
+     * Presigned URLs are reused until the refresh fraction of their lifetime has passed,
+     * so a signature handed out is always valid for at least the remaining part
+     */
+    @Override
+    public Mono<String> getFileUrl(String storagePath) {
+        String cached = presignedUrls.get(storagePath);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        return workerPools.storage().submit(() -> presign(storagePath));
+    }
+    
+    @Override
+    public Mono<Map<String, String>> getFileUrls(Collection<String> storagePaths) {
+        Map<String, String> urls = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String storagePath : new LinkedHashSet<>(storagePaths)) {
+            String cached = presignedUrls.get(storagePath);
+            if (cached != null) {
+                urls.put(storagePath, cached);
+            } else {
+                missing.add(storagePath);
+            }
+        }
+        if (missing.isEmpty()) {
+            return Mono.just(urls);
+        }
+        
+        // Sign all misses in one task on the storage pool
+        return workerPools.storage().submit(() -> {
+            for (String storagePath : missing) {
+                urls.put(storagePath, presign(storagePath));
+            }
+            return urls;
         });
     }
     
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("presignedUrlCacheSize", presignedUrls.size());
+        stats.put("presignedUrlCacheHits", presignedUrls.getHits());
+        stats.put("presignedUrlCacheMisses", presignedUrls.getMisses());
+        stats.put("presignedUrlsSigned", signedUrls.get());
+        return stats;
+    }
+    
+    private String presign(String storagePath) throws Exception {
+        StorageProperties.MinioStorage minio = storageProperties.getMinio();
+        long signedAt = System.currentTimeMillis();
+        String url = minioClient.getPresignedObjectUrl(
+                GetPresignedObjectUrlArgs.builder()
+                        .method(io.minio.http.Method.GET)
+                        .bucket(minio.getBucket())
+                        .object(storagePath)
+                        .expiry(minio.getPresignedUrlExpiry())
+                        .build()
+        );
+        signedUrls.incrementAndGet();
+        
+        long reuseMillis = (long) (minio.getPresignedUrlExpiry() * 1000L * minio.getPresignedUrlRefreshFraction());
+        presignedUrls.put(storagePath, url, signedAt + reuseMillis);
+        return url;
+    }
+    
     @Override
     public Mono<Void> deleteFile(String storagePath) {
-        return Mono.fromRunnable(() -> {
+        presignedUrls.invalidate(storagePath);
+        if (ContentAddressedStorage.isBlobPath(storagePath)) {
+            return contentAddressedStorage.release(storagePath, this);
+        }
+        return workerPools.storage().submit(() -> {
             try {
                 String bucket = storageProperties.getMinio().getBucket();
                 minioClient.removeObject(
@@ -129,7 +371,8 @@ class MinioFileStorageService implements FileStorageService {
             } catch (Exception e) {
                 log.error("Failed to delete file from MinIO", e);
             }
-        });
+            return null;
+        }).then();
     }
     
     private String getFileExtension(String filename) {
@@ -148,40 +391,6 @@ class MinioFileStorageService implements FileStorageService {
             default -> "application/octet-stream";
         };
     }
-    
-    private byte[] generateThumbnailFromBytes(byte[] imageBytes) throws Exception {
-        java.io.ByteArrayInputStream bais = new java.io.ByteArrayInputStream(imageBytes);
-        java.awt.image.BufferedImage originalImage = javax.imageio.ImageIO.read(bais);
-        if (originalImage == null) {
-            throw new Exception("Could not read image");
-        }
-
-        int thumbnailWidth = 200;
-        int thumbnailHeight = 200;
-
-        double scale = Math.min(
-                (double) thumbnailWidth / originalImage.getWidth(),
-                (double) thumbnailHeight / originalImage.getHeight()
-        );
-
-        int scaledWidth = (int) (originalImage.getWidth() * scale);
-        int scaledHeight = (int) (originalImage.getHeight() * scale);
-
-        java.awt.image.BufferedImage thumbnail = new java.awt.image.BufferedImage(
-                scaledWidth, scaledHeight, java.awt.image.BufferedImage.TYPE_INT_RGB
-        );
-        java.awt.Graphics2D g = thumbnail.createGraphics();
-        g.setRenderingHint(
-                java.awt.RenderingHints.KEY_INTERPOLATION,
-                java.awt.RenderingHints.VALUE_INTERPOLATION_BILINEAR
-        );
-        g.drawImage(originalImage, 0, 0, scaledWidth, scaledHeight, null);
-        g.dispose();
-
-        java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-        javax.imageio.ImageIO.write(thumbnail, "jpg", baos);
-        return baos.toByteArray();
-    }
 }
 
 // ============= Local File System Implementation =============
@@ -189,13 +398,18 @@ class MinioFileStorageService implements FileStorageService {
 @Slf4j
 @Service
 @ConditionalOnProperty(name = "storage.type", havingValue = "local", matchIfMissing = true)
-class LocalFileStorageService implements FileStorageService {
+class LocalFileStorageService implements FileStorageService, BlobStore {
     
     private final StorageProperties storageProperties;
+    private final WorkerPools workerPools;
+    private final ContentAddressedStorage contentAddressedStorage;
     private final Path rootLocation;
     
-    public LocalFileStorageService(StorageProperties storageProperties) {
+    public LocalFileStorageService(StorageProperties storageProperties, WorkerPools workerPools,
+                                   ContentAddressedStorage contentAddressedStorage) {
         this.storageProperties = storageProperties;
+        this.workerPools = workerPools;
+        this.contentAddressedStorage = contentAddressedStorage;
         this.rootLocation = Paths.get(storageProperties.getLocal().getUploadDir());
         
         try {
@@ -207,68 +421,70 @@ class LocalFileStorageService implements FileStorageService {
     }
     
     @Override
-    public Mono<FileUploadResponse> uploadFile(FilePart filePart, String folder) {
-        String originalFilename = filePart.filename();
+    public Mono<FileUploadResponse> uploadContent(Flux<DataBuffer> source, String originalFilename, String folder) {
         String extension = getFileExtension(originalFilename);
+        if (storageProperties.getDedup().isEnabled()) {
+            return contentAddressedStorage.upload(source, originalFilename, extension, getContentType(extension), this)
+                    .onErrorMap(IOException.class, e -> new RuntimeException("Failed to upload file locally", e));
+        }
         String uniqueFilename = UUID.randomUUID() + extension;
         
-        // Convert DataBuffer to byte array reactively
-        return DataBufferUtils.join(filePart.content())
-                .map(dataBuffer -> {
-                    byte[] bytes = new byte[dataBuffer.readableByteCount()];
-                    dataBuffer.read(bytes);
-                    DataBufferUtils.release(dataBuffer);
-                    return bytes;
-                })
-                .flatMap(bytes -> Mono.fromCallable(() -> {
-                    Path folderPath = rootLocation.resolve(folder);
-                    Files.createDirectories(folderPath);
-                    
-                    Path destinationFile = folderPath.resolve(uniqueFilename);
-                    
-                    // Write bytes to file
-                    Files.write(destinationFile, bytes);
-                    
-                    long fileSize = Files.size(destinationFile);
-                    String storagePath = folder + "/" + uniqueFilename;
-                    String fileUrl = "/api/files/" + storagePath;
+        String storagePath = folder + "/" + uniqueFilename;
+        Path folderPath = rootLocation.resolve(folder);
+        Path destinationFile = folderPath.resolve(uniqueFilename);
+        AtomicLong fileSize = new AtomicLong();
+        Flux<DataBuffer> content = source
+                .doOnNext(buffer -> fileSize.addAndGet(buffer.readableByteCount()));
+        
+        return workerPools.storage().submit(() -> Files.createDirectories(folderPath))
+                // Chunks are written as they arrive through an AsynchronousFileChannel,
+                // the file is never joined in memory
+                .then(DataBufferUtils.write(content, destinationFile,
+                        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))
+                .doOnError(e -> deleteFile(storagePath).subscribe())
+                .then(Mono.defer(() -> {
+                    log.info("File uploaded locally: {} ({} bytes)", destinationFile.toAbsolutePath(), fileSize.get());
                     
-                    // Generate thumbnail for images and videos
-                    String thumbnailUrl = null;
                     String fileType = getContentType(extension);
-                    
-                    if (fileType.startsWith("image/")) {
-                        // Generate thumbnail for images
-                        try {
-                            byte[] thumbnailData = generateThumbnailFromBytes(bytes);
-                            String thumbnailFilename = "thumb_" + uniqueFilename;
-                            Path thumbnailFile = folderPath.resolve(thumbnailFilename);
-                            Files.write(thumbnailFile, thumbnailData);
-                            
-                            String thumbnailStoragePath = folder + "/" + thumbnailFilename;
-                            thumbnailUrl = "/api/files/" + thumbnailStoragePath;
-                            log.info("Thumbnail generated: {}", thumbnailFile.toAbsolutePath());
-                        } catch (Exception e) {
-                            log.warn("Failed to generate thumbnail for image: {}", e.getMessage());
-                            // Fallback to original image
-                            thumbnailUrl = fileUrl;
-                        }
-                    } else if (fileType.startsWith("video/")) {
-                        // For videos, thumbnail will be null - frontend will use video element's first frame
-                        thumbnailUrl = null;
-                    }
-                    
-                    log.info("File uploaded locally: {}", destinationFile.toAbsolutePath());
-                    
-                    return FileUploadResponse.builder()
+                    FileUploadResponse response = FileUploadResponse.builder()
                             .fileName(originalFilename)
-                            .fileUrl(fileUrl)
+                            .fileUrl("/api/files/" + storagePath)
                             .storagePath(storagePath)
-                            .fileSize(fileSize)
+                            .fileSize(fileSize.get())
                             .fileType(fileType)
-                            .thumbnailUrl(thumbnailUrl)
                             .build();
-                }).onErrorMap(IOException.class, e -> new RuntimeException("Failed to upload file locally", e)));
+                    
+                    // Image thumbnails are created afterwards by ThumbnailService, the upload does not wait for them.
+                    // For videos, thumbnail will be null - frontend will use video element's first frame
+                    return FileStorageService.renderPlaceholder(workerPools, destinationFile, fileType)
+                            .doOnNext(response::setPlaceholder)
+                            .thenReturn(response);
+                }))
+                .onErrorMap(IOException.class, e -> new RuntimeException("Failed to upload file locally", e));
+    }
+    
+    /**
+     * Subsampled decode on the image pool, renditions are stored next to the original
+     */
+    @Override
+    public Mono<ImageRenditions> generateRenditions(String storagePath) {
+        return workerPools.image().submit(() -> {
+            Map<Integer, byte[]> renditions;
+            try (ImageInputStream input = ImageIO.createImageInputStream(rootLocation.resolve(storagePath).toFile())) {
+                renditions = ImageResizer.renderJpegs(input, THUMBNAIL_SIZE, PREVIEW_SIZE);
+            }
+            
+            for (Map.Entry<Integer, byte[]> rendition : renditions.entrySet()) {
+                Path renditionFile = rootLocation.resolve(FileStorageService.renditionPath(storagePath, rendition.getKey()));
+                Files.write(renditionFile, rendition.getValue());
+            }
+            
+            log.info("Renditions generated for {}", storagePath);
+            return ImageRenditions.builder()
+                    .thumbnailUrl("/api/files/" + FileStorageService.renditionPath(storagePath, THUMBNAIL_SIZE))
+                    .previewUrl("/api/files/" + FileStorageService.renditionPath(storagePath, PREVIEW_SIZE))
+                    .build();
+        });
     }
     
     @Override
@@ -276,9 +492,19 @@ class LocalFileStorageService implements FileStorageService {
         return Mono.just("/api/files/" + storagePath);
     }
     
+    @Override
+    public Mono<Map<String, String>> getFileUrls(Collection<String> storagePaths) {
+        Map<String, String> urls = new HashMap<>();
+        storagePaths.forEach(storagePath -> urls.put(storagePath, "/api/files/" + storagePath));
+        return Mono.just(urls);
+    }
+    
     @Override
     public Mono<Void> deleteFile(String storagePath) {
-        return Mono.fromRunnable(() -> {
+        if (ContentAddressedStorage.isBlobPath(storagePath)) {
+            return contentAddressedStorage.release(storagePath, this);
+        }
+        return workerPools.storage().submit(() -> {
             try {
                 Path filePath = rootLocation.resolve(storagePath);
                 Files.deleteIfExists(filePath);
@@ -286,7 +512,40 @@ class LocalFileStorageService implements FileStorageService {
             } catch (IOException e) {
                 log.error("Failed to delete file locally", e);
             }
-        });
+            return null;
+        }).then();
+    }
+    
+    // ----- BlobStore (content-addressed mode) -----
+    
+    /**
+     * Inside the upload directory, so finished uploads are moved into place atomically
+     */
+    @Override
+    public Path tempDirectory() {
+        return rootLocation.resolve(".tmp");
+    }
+    
+    @Override
+    public boolean exists(String storagePath) {
+        return Files.exists(rootLocation.resolve(storagePath));
+    }
+    
+    @Override
+    public void write(Path source, String storagePath, String contentType) throws IOException {
+        Path destination = rootLocation.resolve(storagePath);
+        Files.createDirectories(destination.getParent());
+        Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    @Override
+    public void delete(String storagePath) throws IOException {
+        Files.deleteIfExists(rootLocation.resolve(storagePath));
+    }
+    
+    @Override
+    public String urlOf(String storagePath) {
+        return "/api/files/" + storagePath;
     }
     
     private String getFileExtension(String filename) {
@@ -305,38 +564,4 @@ class LocalFileStorageService implements FileStorageService {
             default -> "application/octet-stream";
         };
     }
-    
-    private byte[] generateThumbnailFromBytes(byte[] imageBytes) throws Exception {
-        java.io.ByteArrayInputStream bais = new java.io.ByteArrayInputStream(imageBytes);
-        java.awt.image.BufferedImage originalImage = javax.imageio.ImageIO.read(bais);
-        if (originalImage == null) {
-            throw new Exception("Could not read image");
-        }
-
-        int thumbnailWidth = 200;
-        int thumbnailHeight = 200;
-
-        double scale = Math.min(
-                (double) thumbnailWidth / originalImage.getWidth(),
-                (double) thumbnailHeight / originalImage.getHeight()
-        );
-
-        int scaledWidth = (int) (originalImage.getWidth() * scale);
-        int scaledHeight = (int) (originalImage.getHeight() * scale);
-
-        java.awt.image.BufferedImage thumbnail = new java.awt.image.BufferedImage(
-                scaledWidth, scaledHeight, java.awt.image.BufferedImage.TYPE_INT_RGB
-        );
-        java.awt.Graphics2D g = thumbnail.createGraphics();
-        g.setRenderingHint(
-                java.awt.RenderingHints.KEY_INTERPOLATION,
-                java.awt.RenderingHints.VALUE_INTERPOLATION_BILINEAR
-        );
-        g.drawImage(originalImage, 0, 0, scaledWidth, scaledHeight, null);
-        g.dispose();
-
-        java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-        javax.imageio.ImageIO.write(thumbnail, "jpg", baos);
-        return baos.toByteArray();
-    }
 }
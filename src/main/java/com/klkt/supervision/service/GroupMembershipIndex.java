@@ -0,0 +1,278 @@
+package com.klkt.supervision.service;
+
+import com.klkt.supervision.dto.SSEEnvelope;
+import com.klkt.supervision.entity.GroupMember;
+import com.klkt.supervision.entity.User;
+import com.klkt.supervision.repository.GroupMemberRepository;
+import com.klkt.supervision.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index of group memberships and ADMIN users.
+ * Used to resolve SSE broadcast recipients without hitting the database.
+ * Changes go through the SSE event bus so the index of every node stays current.
+ * A load takes a snapshot of the database while changes keep arriving: changes are applied right away and
+ * also buffered, then replayed on top of the snapshot, so none made during the load is lost.
+ * ADMIN users are refreshed periodically as well, which picks up roles changed in the database.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class GroupMembershipIndex {
+
+    private static final Duration ADMIN_REFRESH_INTERVAL = Duration.ofMinutes(1);
+
+    private final GroupMemberRepository groupMemberRepository;
+    private final UserRepository userRepository;
+    private final SSEEventBus eventBus;
+
+    // groupId -> member user IDs
+    private final Map<Long, Set<Long>> groupMembers = new ConcurrentHashMap<>();
+
+    // userId -> IDs of the groups the user is a member of
+    private final Map<Long, Set<Long>> userGroups = new ConcurrentHashMap<>();
+
+    // IDs of ADMIN users - they receive events from all groups
+    private final Set<Long> adminIds = ConcurrentHashMap.newKeySet();
+
+    // Changes received while at least one load runs; each load replays those received after it started.
+    // Guarded by this, like every write to the index.
+    private final List<SSEEnvelope> changesDuringLoad = new ArrayList<>();
+    private int loadsInProgress;
+
+    private volatile boolean loaded = false;
+
+    private Disposable adminRefresher;
+
+    @PostConstruct
+    public void subscribeToEventBus() {
+        eventBus.subscribe(this::applyChange);
+        // Changes published by other nodes while the bus was disconnected are lost
+        eventBus.subscribeResync(this::load);
+
+        adminRefresher = Flux.interval(ADMIN_REFRESH_INTERVAL, ADMIN_REFRESH_INTERVAL)
+                .onBackpressureDrop()
+                .concatMap(tick -> refreshAdmins(), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (adminRefresher != null) {
+            adminRefresher.dispose();
+        }
+    }
+
+    /**
+     * Load all memberships and ADMIN users once the application is ready, and again after an event bus gap.
+     * Entries are replaced one by one, so lookups never see an empty index during a reload.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        int from = startLoad();
+        Mono.zip(
+                        groupMemberRepository.findAll().collectList(),
+                        userRepository.findIdsByRole(User.UserRole.ADMIN.name()).collectList())
+                .subscribe(tuple -> {
+                    finishLoad(from, tuple.getT1(), tuple.getT2());
+                    loaded = true;
+                    log.info("Group membership index loaded: {} groups, {} memberships, {} admins",
+                            groupMembers.size(), tuple.getT1().size(), adminIds.size());
+                }, error -> {
+                    finishLoad(from, null, null);
+                    log.error("Failed to load group membership index, falling back to database lookups", error);
+                });
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Resolve broadcast recipients (members + all ADMIN users) for a group.
+     * Served from memory once the index is loaded, from the database otherwise.
+     */
+    public Mono<Set<Long>> resolveRecipients(Long groupId) {
+        if (loaded) {
+            return Mono.just(getRecipients(groupId));
+        }
+
+        return Mono.zip(
+                        groupMemberRepository.findByGroupId(groupId)
+                                .map(member -> member.getUserId())
+                                .collectList(),
+                        userRepository.findIdsByRole(User.UserRole.ADMIN.name()).collectList())
+                .map(tuple -> {
+                    Set<Long> allUserIds = new HashSet<>(tuple.getT1());
+                    allUserIds.addAll(tuple.getT2());
+                    return allUserIds;
+                });
+    }
+
+    /**
+     * Get members of a group plus all ADMIN users from the in-memory index
+     */
+    public Set<Long> getRecipients(Long groupId) {
+        Set<Long> recipients = new HashSet<>(adminIds);
+        Set<Long> members = groupMembers.get(groupId);
+        if (members != null) {
+            recipients.addAll(members);
+        }
+        return recipients;
+    }
+
+    public boolean isAdmin(Long userId) {
+        return adminIds.contains(userId);
+    }
+
+    /**
+     * Get IDs of the groups a user is a member of
+     */
+    public Set<Long> getGroupIds(Long userId) {
+        Set<Long> groupIds = userGroups.get(userId);
+        return groupIds != null ? new HashSet<>(groupIds) : new HashSet<>();
+    }
+
+    public void addMember(Long groupId, Long userId) {
+        publishChange(SSEEnvelope.Type.MEMBER_ADDED, groupId, userId);
+    }
+
+    public void removeMember(Long groupId, Long userId) {
+        publishChange(SSEEnvelope.Type.MEMBER_REMOVED, groupId, userId);
+    }
+
+    public void addAdmin(Long userId) {
+        publishChange(SSEEnvelope.Type.ADMIN_ADDED, null, userId);
+    }
+
+    /**
+     * A user lost the ADMIN role or was deleted
+     */
+    public void removeAdmin(Long userId) {
+        publishChange(SSEEnvelope.Type.ADMIN_REMOVED, null, userId);
+    }
+
+    private void publishChange(SSEEnvelope.Type type, Long groupId, Long userId) {
+        eventBus.publish(SSEEnvelope.builder()
+                .type(type)
+                .groupId(groupId)
+                .userIds(List.of(userId))
+                .build());
+    }
+
+    private void applyChange(SSEEnvelope envelope) {
+        switch (envelope.getType()) {
+            case MEMBER_ADDED, MEMBER_REMOVED, ADMIN_ADDED, ADMIN_REMOVED -> {
+                synchronized (this) {
+                    if (loadsInProgress > 0) {
+                        changesDuringLoad.add(envelope);
+                    }
+                    apply(envelope);
+                }
+            }
+            default -> {
+                // SSE events are handled by SSEService
+            }
+        }
+    }
+
+    private void apply(SSEEnvelope envelope) {
+        switch (envelope.getType()) {
+            case MEMBER_ADDED -> envelope.getUserIds().forEach(userId -> applyAddMember(envelope.getGroupId(), userId));
+            case MEMBER_REMOVED -> envelope.getUserIds().forEach(userId -> applyRemoveMember(envelope.getGroupId(), userId));
+            case ADMIN_ADDED -> adminIds.addAll(envelope.getUserIds());
+            case ADMIN_REMOVED -> adminIds.removeAll(envelope.getUserIds());
+            default -> {
+            }
+        }
+    }
+
+    // ----- Loads -----
+
+    /**
+     * Start buffering changes; returns the position the load replays from
+     */
+    private synchronized int startLoad() {
+        loadsInProgress++;
+        return changesDuringLoad.size();
+    }
+
+    /**
+     * Replace the index with the snapshot (null when the load failed), then replay the changes received
+     * since the load started: the snapshot may or may not contain them, and applying them again is harmless
+     */
+    private synchronized void finishLoad(int from, List<GroupMember> members, List<Long> admins) {
+        if (members != null) {
+            Map<Long, Set<Long>> byGroup = new HashMap<>();
+            Map<Long, Set<Long>> byUser = new HashMap<>();
+            members.forEach(member -> {
+                byGroup.computeIfAbsent(member.getGroupId(), id -> ConcurrentHashMap.newKeySet()).add(member.getUserId());
+                byUser.computeIfAbsent(member.getUserId(), id -> ConcurrentHashMap.newKeySet()).add(member.getGroupId());
+            });
+            groupMembers.keySet().retainAll(byGroup.keySet());
+            groupMembers.putAll(byGroup);
+            userGroups.keySet().retainAll(byUser.keySet());
+            userGroups.putAll(byUser);
+        }
+        if (admins != null) {
+            replaceAdmins(admins);
+        }
+
+        changesDuringLoad.subList(from, changesDuringLoad.size()).forEach(this::apply);
+        if (--loadsInProgress == 0) {
+            changesDuringLoad.clear();
+        }
+    }
+
+    private Mono<Void> refreshAdmins() {
+        int from = startLoad();
+        return userRepository.findIdsByRole(User.UserRole.ADMIN.name())
+                .collectList()
+                .doOnNext(admins -> finishLoad(from, null, admins))
+                .doOnError(e -> {
+                    finishLoad(from, null, null);
+                    log.warn("Failed to refresh ADMIN users: {}", e.getMessage());
+                })
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    private void replaceAdmins(List<Long> admins) {
+        adminIds.addAll(admins);
+        adminIds.retainAll(new HashSet<>(admins));
+    }
+
+    private void applyAddMember(Long groupId, Long userId) {
+        groupMembers.computeIfAbsent(groupId, id -> ConcurrentHashMap.newKeySet()).add(userId);
+        userGroups.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(groupId);
+    }
+
+    private void applyRemoveMember(Long groupId, Long userId) {
+        groupMembers.computeIfPresent(groupId, (id, members) -> {
+            members.remove(userId);
+            return members.isEmpty() ? null : members;
+        });
+        userGroups.computeIfPresent(userId, (id, groups) -> {
+            groups.remove(groupId);
+            return groups.isEmpty() ? null : groups;
+        });
+    }
+}
@@ -27,6 +27,7 @@ public class GroupService {
     private final UserRepository userRepository;
     private final SSEService sseService;
     private final GroupCodeService groupCodeService;
+    private final GroupMembershipIndex membershipIndex;
     
     public Mono<GroupResponse> createGroup(CreateGroupRequest request) {
         return userRepository.existsById(request.getCreatedBy())
@@ -61,6 +62,7 @@ public class GroupService {
                             .build();
                     
                     return groupMemberRepository.save(member)
+                            .doOnSuccess(m -> membershipIndex.addMember(m.getGroupId(), m.getUserId()))
                             .then(getGroupMemberCount(savedGroup.getId())
                                     .map(count -> toGroupResponse(savedGroup, count)))
                             .doOnSuccess(g -> {
@@ -101,6 +103,8 @@ public class GroupService {
                                                     .build();
                                             
                                             return groupMemberRepository.save(member)
+                                                    .doOnSuccess(m -> membershipIndex.addMember(
+                                                            groupId, request.getUserId()))
                                                     .then(getGroupById(groupId))
                                                     .doOnSuccess(group -> {
                                                         log.info("Added user {} to group {}", 
@@ -118,6 +122,7 @@ public class GroupService {
         return groupMemberRepository.deleteByGroupIdAndUserId(groupId, userId)
                 .doOnSuccess(v -> {
                     log.info("Removed user {} from group {}", userId, groupId);
+                    membershipIndex.removeMember(groupId, userId);
                     
                     // Create a simple Map to avoid self-reference in anonymous class
                     java.util.Map<String, Long> data = new java.util.HashMap<>();
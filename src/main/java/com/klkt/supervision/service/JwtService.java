@@ -1,6 +1,10 @@
 package com.klkt.supervision.service;
 
+import com.klkt.supervision.dto.AuthenticatedUser;
+import com.klkt.supervision.util.ExpiringCache;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import lombok.extern.slf4j.Slf4j;
@@ -9,8 +13,12 @@ import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.function.Function;
 
@@ -18,15 +26,22 @@ import java.util.function.Function;
 @Service
 public class JwtService {
     
-    @Value("${jwt.secret}")
-    private String secret;
+    private final Long expiration;
+    private final SecretKey signingKey;
+    private final JwtParser parser;
     
-    @Value("${jwt.expiration}")
-    private Long expiration;
+    // Verified tokens by SHA-256 digest, each kept until the token expires
+    private final ExpiringCache<String, AuthenticatedUser> verifiedTokens;
     
-    private SecretKey getSigningKey() {
-        byte[] keyBytes = secret.getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
+    public JwtService(@Value("${jwt.secret}") String secret,
+                      @Value("${jwt.expiration}") Long expiration,
+                      @Value("${jwt.cache-size:10000}") int cacheSize) {
+        this.expiration = expiration;
+        this.signingKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        this.parser = Jwts.parser()
+                .verifyWith(signingKey)
+                .build();
+        this.verifiedTokens = new ExpiringCache<>(cacheSize);
     }
     
     public String generateToken(Long userId, String username, String role) {
@@ -40,23 +55,58 @@ public class JwtService {
                 .subject(username)
                 .issuedAt(new Date(System.currentTimeMillis()))
                 .expiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSigningKey())
+                .signWith(signingKey)
                 .compact();
     }
     
+    /**
+     * Verify the token once and return its principal, or null when it is invalid, expired or lacks
+     * username, userId or role. Tokens seen before are answered from the cache without verifying again.
+     */
+    public AuthenticatedUser authenticate(String token) {
+        String digest = digest(token);
+        AuthenticatedUser cached = verifiedTokens.get(digest);
+        if (cached != null) {
+            return cached;
+        }
+        
+        Claims claims;
+        try {
+            claims = extractAllClaims(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            log.warn("Invalid JWT token: {}", e.getMessage());
+            return null;
+        }
+        
+        String username = claims.getSubject();
+        Long userId = toUserId(claims.get("userId"));
+        Object role = claims.get("role");
+        Date expiresAt = claims.getExpiration();
+        if (username == null || username.isEmpty() || userId == null
+                || !(role instanceof String) || ((String) role).isEmpty() || expiresAt == null) {
+            log.warn("Invalid token claims (missing username, userId, role or expiration)");
+            return null;
+        }
+        
+        AuthenticatedUser user = new AuthenticatedUser(userId, username, (String) role, expiresAt.getTime());
+        verifiedTokens.put(digest, user, expiresAt.getTime());
+        return user;
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cachedTokens", verifiedTokens.size());
+        stats.put("cacheHits", verifiedTokens.getHits());
+        stats.put("cacheMisses", verifiedTokens.getMisses());
+        return stats;
+    }
+    
     public String extractUsername(String token) {
         return extractClaim(token, Claims::getSubject);
     }
     
     public Long extractUserId(String token) {
-        Claims claims = extractAllClaims(token);
-        Object userIdObj = claims.get("userId");
-        if (userIdObj instanceof Integer) {
-            return ((Integer) userIdObj).longValue();
-        } else if (userIdObj instanceof Long) {
-            return (Long) userIdObj;
-        }
-        return null;
+        return toUserId(extractAllClaims(token).get("userId"));
     }
     
     public String extractRole(String token) {
@@ -74,30 +124,33 @@ public class JwtService {
     }
     
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-    }
-    
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+        return parser.parseSignedClaims(token).getPayload();
     }
     
     public Boolean validateToken(String token, String username) {
-        final String tokenUsername = extractUsername(token);
-        return (tokenUsername.equals(username) && !isTokenExpired(token));
+        AuthenticatedUser user = authenticate(token);
+        return user != null && user.getUsername().equals(username);
     }
     
     public Boolean validateToken(String token) {
+        return authenticate(token) != null;
+    }
+    
+    private static Long toUserId(Object userIdObj) {
+        if (userIdObj instanceof Integer) {
+            return ((Integer) userIdObj).longValue();
+        } else if (userIdObj instanceof Long) {
+            return (Long) userIdObj;
+        }
+        return null;
+    }
+    
+    private static String digest(String token) {
         try {
-            extractAllClaims(token);
-            return !isTokenExpired(token);
-        } catch (Exception e) {
-            log.error("Invalid JWT token: {}", e.getMessage());
-            return false;
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
         }
     }
 }
-
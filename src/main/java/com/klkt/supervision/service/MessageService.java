@@ -1,76 +1,136 @@
 package com.klkt.supervision.service;
 
+import com.klkt.supervision.config.WorkerPoolProperties;
+import com.klkt.supervision.config.WorkerPools;
 import com.klkt.supervision.dto.AttachmentResponse;
+import com.klkt.supervision.dto.MediaMetadata;
 import com.klkt.supervision.dto.MessageResponse;
 import com.klkt.supervision.dto.SendMessageRequest;
+import com.klkt.supervision.dto.SenderProfile;
 import com.klkt.supervision.entity.Message;
 import com.klkt.supervision.entity.MessageAttachment;
 import com.klkt.supervision.repository.*;
+import com.klkt.supervision.util.MediaMetadataProbe;
+import com.klkt.supervision.util.MessageCursor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class MessageService {
     
+    // About four ~20px JPEG data URIs
+    private static final int MAX_PLACEHOLDER_CHARS_PER_MESSAGE = 4500;
+    
+    // Messages per history page; larger sizes are clamped
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 100;
+    
     private final MessageRepository messageRepository;
+    private final MessageWriteRepository messageWriteRepository;
+    private final TransactionalOperator transactionalOperator;
     private final MessageAttachmentRepository attachmentRepository;
     private final UserRepository userRepository;
     private final GroupRepository groupRepository;
     private final GroupMemberRepository groupMemberRepository;
     private final FileStorageService fileStorageService;
     private final SSEService sseService;
+    private final SenderProfileCache senderProfileCache;
+    private final ThumbnailService thumbnailService;
+    private final ChunkedUploadService chunkedUploadService;
+    private final WorkerPools workerPools;
+    private final WorkerPoolProperties workerPoolProperties;
     
+    /**
+     * Membership check, group_code lookup, insert and sender profile in one statement.
+     * Only a refused send pays for the extra queries that tell why it was refused.
+     */
     public Mono<MessageResponse> sendMessage(SendMessageRequest request) {
-        return validateUserInGroup(request.getSenderId(), request.getGroupId())
-                .flatMap(valid -> {
-                    if (!valid) {
-                        return Mono.error(new RuntimeException(
-                                "User is not a member of this group"));
-                    }
-                    
-                    // Get group to retrieve group_code
-                    return groupRepository.findById(request.getGroupId())
-                            .switchIfEmpty(Mono.error(new RuntimeException("Group not found")))
-                            .flatMap(group -> {
-                                Message message = Message.builder()
-                                        .groupId(request.getGroupId())
-                                        .groupCode(group.getGroupCode())
-                                        .senderId(request.getSenderId())
-                                        .content(request.getContent())
-                                        .messageType(Message.MessageType.valueOf(
-                                                request.getMessageType().toUpperCase()))
-                                        .createdAt(LocalDateTime.now())
-                                        .updatedAt(LocalDateTime.now())
-                                        .build();
-                                
-                                return messageRepository.save(message)
-                                        .flatMap(savedMessage -> 
-                                                buildMessageResponse(savedMessage, List.of()))
-                                        .doOnSuccess(msgResponse -> {
-                                            log.info("Message sent to group {} (code: {}): {}", 
-                                                    request.getGroupId(), group.getGroupCode(), msgResponse.getId());
-                                            sseService.sendToGroup(request.getGroupId(), 
-                                                    "new_message", msgResponse);
-                                        });
-                            });
+        Message message = Message.builder()
+                .groupId(request.getGroupId())
+                .senderId(request.getSenderId())
+                .content(request.getContent())
+                .messageType(Message.MessageType.valueOf(
+                        request.getMessageType().toUpperCase()))
+                .createdAt(LocalDateTime.now())
+                .build();
+        
+        return messageWriteRepository.insertIfAllowed(message)
+                .switchIfEmpty(Mono.defer(() -> rejectedSendError(request.getSenderId(), request.getGroupId())))
+                .map(sent -> {
+                    senderProfileCache.put(sent.sender());
+                    return toMessageResponse(sent.message(), List.of(), sent.sender());
+                })
+                .doOnSuccess(msgResponse -> {
+                    log.info("Message sent to group {}: {}", request.getGroupId(), msgResponse.getId());
+                    sseService.sendToGroup(request.getGroupId(), 
+                            "new_message", msgResponse);
                 });
     }
     
+    /**
+     * Parts are uploaded as they are read from the request, in client order, at most workers.uploads.per-request
+     * at a time; nothing waits for the whole request first
+     */
     public Mono<MessageResponse> sendMessageWithAttachments(
             SendMessageRequest request, 
-            List<FilePart> files) {
+            Flux<FilePart> files) {
+        
+        return sendMessageWithSources(request,
+                files.map(file -> new AttachmentSource(file.filename(), file.content())));
+    }
+    
+    /**
+     * Send a message whose attachments were uploaded beforehand through chunked upload sessions.
+     * senderId must be the authenticated user, who owns the sessions.
+     * The sessions are dropped once the message is stored and kept for a retry if it fails.
+     */
+    public Mono<MessageResponse> sendMessageWithUploads(SendMessageRequest request, Long userId) {
+        if (request.getUploadIds() == null || request.getUploadIds().isEmpty()) {
+            return Mono.error(new RuntimeException("No uploads to attach"));
+        }
+        if (!userId.equals(request.getSenderId())) {
+            return Mono.error(new RuntimeException("Uploads can only be sent by the user who uploaded them"));
+        }
+        
+        return Mono.fromCallable(() -> chunkedUploadService.acquireCompleted(request.getUploadIds(), userId))
+                .flatMap(uploads -> {
+                    Flux<AttachmentSource> sources = Flux.fromIterable(uploads)
+                            .map(upload -> new AttachmentSource(upload.getFileName(), chunkedUploadService.read(upload)));
+                    // Also on cancel (client gone): sessions left FINALIZING would never expire
+                    return sendMessageWithSources(request, sources)
+                            .doFinally(signal -> {
+                                if (signal == SignalType.ON_COMPLETE) {
+                                    chunkedUploadService.finish(uploads);
+                                } else {
+                                    chunkedUploadService.release(uploads);
+                                }
+                            });
+                });
+    }
+    
+    private Mono<MessageResponse> sendMessageWithSources(
+            SendMessageRequest request, 
+            Flux<AttachmentSource> files) {
         
         return validateUserInGroup(request.getSenderId(), request.getGroupId())
                 .flatMap(valid -> {
@@ -83,111 +143,152 @@ public class MessageService {
                     return groupRepository.findById(request.getGroupId())
                             .switchIfEmpty(Mono.error(new RuntimeException("Group not found")))
                             .flatMap(group -> {
-                                // Determine message type from files
-                                String messageType = determineMessageType(files);
-                                
-                                // Log location data from request
-                                log.info("=== Location Data from Request ===");
+                                // Extract location data from infoData Map
+                                Double latitude = null;
+                                Double longitude = null;
+                                String locationDetail = null;
                                 if (request.getInfoData() != null) {
-                                    log.info("InfoData: {}", request.getInfoData());
                                     Object locationObj = request.getInfoData().get("location");
                                     if (locationObj instanceof java.util.Map) {
                                         @SuppressWarnings("unchecked")
                                         java.util.Map<String, Object> location = (java.util.Map<String, Object>) locationObj;
-                                        log.info("Location - Latitude: {}", location.get("latitude"));
-                                        log.info("Location - Longitude: {}", location.get("longitude"));
-                                        log.info("Location - LocationDetail: {}", location.get("locationDetail"));
+                                        Object latObj = location.get("latitude");
+                                        Object longObj = location.get("longitude");
+                                        Object detailObj = location.get("locationDetail");
+                                        
+                                        if (latObj instanceof Number) {
+                                            latitude = ((Number) latObj).doubleValue();
+                                        }
+                                        if (longObj instanceof Number) {
+                                            longitude = ((Number) longObj).doubleValue();
+                                        }
+                                        if (detailObj instanceof String) {
+                                            locationDetail = (String) detailObj;
+                                        }
                                     }
-                                } else {
-                                    log.info("InfoData is null");
                                 }
+                                final Double finalLatitude = latitude;
+                                final Double finalLongitude = longitude;
+                                final String finalLocationDetail = locationDetail;
                                 
-                                Message message = Message.builder()
-                                        .groupId(request.getGroupId())
-                                        .groupCode(group.getGroupCode())
-                                        .senderId(request.getSenderId())
-                                        .content(request.getContent())
-                                        .messageType(Message.MessageType.valueOf(messageType))
-                                        .createdAt(LocalDateTime.now())
-                                        .updatedAt(LocalDateTime.now())
-                                        .build();
+                                // Files stored so far, deleted again if the message is not written
+                                List<String> storedPaths = Collections.synchronizedList(new ArrayList<>());
+                                AtomicBoolean writing = new AtomicBoolean();
                                 
-                                return messageRepository.save(message)
-                                        .flatMap(savedMessage -> {
-                                                log.info("Saved message with id: {}", savedMessage.getId());
-                                                // Extract location data from infoData Map
-                                                Double latitude = null;
-                                                Double longitude = null;
-                                                String locationDetail = null;
-                                                if (request.getInfoData() != null) {
-                                                    Object locationObj = request.getInfoData().get("location");
-                                                    if (locationObj instanceof java.util.Map) {
-                                                        @SuppressWarnings("unchecked")
-                                                        java.util.Map<String, Object> location = (java.util.Map<String, Object>) locationObj;
-                                                        Object latObj = location.get("latitude");
-                                                        Object longObj = location.get("longitude");
-                                                        Object detailObj = location.get("locationDetail");
-                                                        
-                                                        if (latObj instanceof Number) {
-                                                            latitude = ((Number) latObj).doubleValue();
-                                                        }
-                                                        if (longObj instanceof Number) {
-                                                            longitude = ((Number) longObj).doubleValue();
-                                                        }
-                                                        if (detailObj instanceof String) {
-                                                            locationDetail = (String) detailObj;
-                                                        }
-                                                    }
-                                                }
-                                                return uploadAttachments(savedMessage.getId(), savedMessage.getGroupCode(), files, 
-                                                        latitude, longitude, locationDetail)
-                                                        .collectList()
-                                                        .flatMap(attachments -> {
-                                                            // Store additional metadata in infoData if needed (optional)
-                                                            if (!attachments.isEmpty()) {
-                                                                java.util.Map<String, Object> infoMap = new java.util.HashMap<>();
-                                                                infoMap.put("attachmentCount", attachments.size());
-                                                                
-                                                                try {
-                                                                    com.fasterxml.jackson.databind.ObjectMapper mapper = 
-                                                                            new com.fasterxml.jackson.databind.ObjectMapper();
-                                                                    savedMessage.setInfoData(mapper.writeValueAsString(infoMap));
-                                                                    return messageRepository.save(savedMessage)
-                                                                            .flatMap(updatedMessage -> 
-                                                                                    buildMessageResponse(updatedMessage, attachments));
-                                                                } catch (Exception e) {
-                                                                    log.warn("Failed to serialize info data", e);
-                                                                    return buildMessageResponse(savedMessage, attachments);
-                                                                }
-                                                            } else {
-                                                                return buildMessageResponse(savedMessage, attachments);
-                                                            }
-                                                        })
-                                                        .doOnSuccess(msgResponse -> {
-                                                            // Broadcast SSE event after message is successfully created and attachments uploaded
-                                                            log.info("Message with {} attachments sent to group {} (code: {}), broadcasting SSE event", 
-                                                                    files.size(), request.getGroupId(), group.getGroupCode());
-                                                            if (msgResponse != null) {
-                                                                sseService.sendToGroup(request.getGroupId(), 
-                                                                        "new_message", msgResponse);
-                                                            } else {
-                                                                log.warn("Message response is null, cannot broadcast SSE event");
-                                                            }
-                                                        })
-                                                        .doOnError(error -> {
-                                                            log.error("Error processing message with attachments for group {}", 
-                                                                    request.getGroupId(), error);
-                                                        });
+                                // The id is reserved first so the files can go to the message's folder;
+                                // the message and all attachment rows are written together once every upload succeeded
+                                return messageWriteRepository.nextMessageId()
+                                        .flatMap(messageId -> uploadAttachments(messageId, group.getGroupCode(),
+                                                        request.getSenderId(), files, finalLatitude, finalLongitude,
+                                                        finalLocationDetail, storedPaths)
+                                                .collectList()
+                                                .flatMap(attachments -> {
+                                                    limitPlaceholders(attachments);
+                                                    Message message = Message.builder()
+                                                            .id(messageId)
+                                                            .groupId(request.getGroupId())
+                                                            .groupCode(group.getGroupCode())
+                                                            .senderId(request.getSenderId())
+                                                            .content(request.getContent())
+                                                            .messageType(Message.MessageType.valueOf(
+                                                                    determineMessageType(attachments)))
+                                                            .infoData(attachmentCountInfo(attachments.size()))
+                                                            .createdAt(LocalDateTime.now())
+                                                            .build();
+                                                    
+                                                    // Not cancelled with the request: a cancel during COMMIT could not
+                                                    // tell whether the message was stored. The write deletes the files
+                                                    // itself when it fails.
+                                                    writing.set(true);
+                                                    CompletableFuture<List<MessageAttachment>> write =
+                                                            transactionalOperator.transactional(
+                                                                            messageWriteRepository.insert(message)
+                                                                                    .then(messageWriteRepository.insertAttachments(attachments)))
+                                                                    .onErrorResume(error -> deleteStoredFiles(storedPaths)
+                                                                            .then(Mono.error(error)))
+                                                                    .toFuture();
+                                                    return Mono.fromFuture(write, true)
+                                                            .flatMap(saved -> {
+                                                                log.info("Saved message with id: {} and {} attachments",
+                                                                        messageId, saved.size());
+                                                                return buildMessageResponse(message, saved);
+                                                            });
+                                                }))
+                                        .onErrorResume(error -> (writing.get() ? Mono.<Void>empty() : deleteStoredFiles(storedPaths))
+                                                .then(Mono.error(error)))
+                                        .doOnCancel(() -> {
+                                            // Cancelled while uploading, the message is never written
+                                            if (!writing.get()) {
+                                                deleteStoredFiles(storedPaths).subscribe();
+                                            }
+                                        })
+                                        .doOnSuccess(msgResponse -> {
+                                            // Broadcast SSE event after message is successfully created and attachments uploaded
+                                            if (msgResponse != null) {
+                                                log.info("Message {} with {} attachments sent to group {}, broadcasting SSE event",
+                                                        msgResponse.getId(), msgResponse.getAttachments().size(),
+                                                        request.getGroupId());
+                                                sseService.sendToGroup(request.getGroupId(), 
+                                                        "new_message", msgResponse);
+                                                // Thumbnails follow as attachment_updated events
+                                                thumbnailService.schedule(msgResponse);
+                                            } else {
+                                                log.warn("Message response is null, cannot broadcast SSE event");
+                                            }
+                                        })
+                                        .doOnError(error -> {
+                                            log.error("Error processing message with attachments for group {}", 
+                                                    request.getGroupId(), error);
                                         });
                             });
                 });
     }
     
-    public Flux<MessageResponse> getGroupMessages(Long groupId, Long userId, Integer page, Integer size) {
-        PageRequest pageRequest = PageRequest.of(
-                page != null ? page : 0, 
-                size != null ? size : 50
-        );
+    /**
+     * infoData of a message with attachments, null without
+     */
+    private String attachmentCountInfo(int attachmentCount) {
+        if (attachmentCount == 0) {
+            return null;
+        }
+        java.util.Map<String, Object> infoMap = new java.util.HashMap<>();
+        infoMap.put("attachmentCount", attachmentCount);
+        try {
+            com.fasterxml.jackson.databind.ObjectMapper mapper = 
+                    new com.fasterxml.jackson.databind.ObjectMapper();
+            return mapper.writeValueAsString(infoMap);
+        } catch (Exception e) {
+            log.warn("Failed to serialize info data", e);
+            return null;
+        }
+    }
+    
+    /**
+     * Compensation for a message that was not written: its files would otherwise stay in storage unreferenced
+     */
+    private Mono<Void> deleteStoredFiles(List<String> storedPaths) {
+        List<String> paths;
+        synchronized (storedPaths) {
+            paths = new ArrayList<>(storedPaths);
+        }
+        return Flux.fromIterable(paths)
+                .flatMap(path -> fileStorageService.deleteFile(path)
+                        .doOnSuccess(done -> log.info("Deleted file {} of unsent message", path))
+                        .onErrorResume(e -> {
+                            log.warn("Failed to delete file {} of unsent message: {}", path, e.getMessage());
+                            return Mono.empty();
+                        }))
+                .then();
+    }
+    
+    /**
+     * Group history, newest first. With a before/after cursor the page is read by keyset
+     * on (created_at, id), so its cost does not depend on how far back the user scrolled.
+     * page/size without a cursor keeps the legacy OFFSET paging for page > 0.
+     */
+    public Flux<MessageResponse> getGroupMessages(Long groupId, Long userId, Integer page, Integer size,
+                                                  String before, String after) {
+        int limit = Math.max(1, Math.min(size != null ? size : DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE));
         
         // Validate user has access to this group (ADMIN or member)
         return validateUserInGroup(userId, groupId)
@@ -197,25 +298,76 @@ public class MessageService {
                                 "User does not have access to this group"));
                     }
                     
-                    return messageRepository.findByGroupIdOrderByCreatedAtDesc(groupId, pageRequest)
-                            .flatMap(message -> 
-                                    attachmentRepository.findByMessageId(message.getId())
-                                            .collectList()
-                                            .flatMap(attachments -> 
-                                                    buildMessageResponse(message, attachments)));
+                    return findGroupMessages(groupId, page, limit, before, after)
+                            .collectList()
+                            .flatMapMany(this::buildMessageResponses);
                 });
     }
     
+    private Flux<Message> findGroupMessages(Long groupId, Integer page, int limit, String before, String after) {
+        if (before != null && after != null) {
+            return Flux.error(new RuntimeException("Only one of before/after can be specified"));
+        }
+        if (before != null) {
+            MessageCursor cursor = MessageCursor.decode(before);
+            return messageRepository.findByGroupIdBefore(groupId, cursor.getCreatedAt(), cursor.getId(), limit);
+        }
+        if (after != null) {
+            MessageCursor cursor = MessageCursor.decode(after);
+            // Read oldest first right after the cursor, then return newest first like every other page
+            return messageRepository.findByGroupIdAfter(groupId, cursor.getCreatedAt(), cursor.getId(), limit)
+                    .collectList()
+                    .flatMapMany(messages -> Flux.fromIterable(messages.reversed()));
+        }
+        if (page != null && page > 0) {
+            return messageRepository.findPageByGroupId(groupId, limit, (long) page * limit);
+        }
+        return messageRepository.findLatestByGroupId(groupId, limit);
+    }
+    
     public Mono<MessageResponse> getMessageById(Long messageId) {
         return messageRepository.findById(messageId)
-                .flatMap(message -> 
-                        attachmentRepository.findByMessageId(message.getId())
-                                .collectList()
-                                .flatMap(attachments -> 
-                                        buildMessageResponse(message, attachments)))
+                .flatMap(message -> buildMessageResponses(List.of(message)).next())
                 .switchIfEmpty(Mono.error(new RuntimeException("Message not found")));
     }
     
+    /**
+     * Load attachments of all messages with a single query, resolve senders through the profile cache
+     * and build responses in the original order
+     */
+    private Flux<MessageResponse> buildMessageResponses(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return Flux.empty();
+        }
+        
+        List<Long> messageIds = messages.stream()
+                .map(Message::getId)
+                .toList();
+        Set<Long> senderIds = messages.stream()
+                .map(Message::getSenderId)
+                .collect(Collectors.toSet());
+        
+        return Mono.zip(
+                        attachmentRepository.findByMessageIdIn(messageIds)
+                                .collectMultimap(MessageAttachment::getMessageId),
+                        senderProfileCache.getAll(senderIds))
+                .flatMapMany(tuple -> Flux.fromIterable(messages)
+                        .map(message -> toMessageResponse(
+                                message,
+                                new ArrayList<>(tuple.getT1().getOrDefault(message.getId(), List.of())),
+                                tuple.getT2().get(message.getSenderId()))));
+    }
+    
+    /**
+     * Same errors, in the same order, as the step by step checks of sendMessageWithSources
+     */
+    private <T> Mono<T> rejectedSendError(Long userId, Long groupId) {
+        return validateUserInGroup(userId, groupId)
+                .flatMap(valid -> Mono.error(new RuntimeException(valid
+                        ? "Group not found"
+                        : "User is not a member of this group")));
+    }
+    
     private Mono<Boolean> validateUserInGroup(Long userId, Long groupId) {
         // First check if user is ADMIN - if so, allow access to all groups
         return userRepository.findById(userId)
@@ -229,17 +381,15 @@ public class MessageService {
                 .switchIfEmpty(Mono.just(false));
     }
     
-    private Flux<MessageAttachment> uploadAttachments(Long messageId, String groupCode, List<FilePart> files,
-                                                      Double latitude, Double longitude, String locationDetail) {
-        // Log received parameters
-        log.info("=== uploadAttachments called ===");
-        log.info("messageId: {}", messageId);
-        log.info("groupCode: {}", groupCode);
-        log.info("files count: {}", files != null ? files.size() : 0);
-        log.info("latitude: {}", latitude);
-        log.info("longitude: {}", longitude);
-        log.info("locationDetail: {}", locationDetail);
-        
+    /**
+     * Upload a few files of the message at a time, attachments come back in the client's file order.
+     * Every upload also waits for a permit of the shared upload limiter, which serves users in turn.
+     * The attachments are not saved here; the storage path of every stored file is added to storedPaths.
+     */
+    private Flux<MessageAttachment> uploadAttachments(Long messageId, String groupCode, Long senderId,
+                                                      Flux<AttachmentSource> files,
+                                                      Double latitude, Double longitude, String locationDetail,
+                                                      List<String> storedPaths) {
         // Get current date in yyyy-MM-dd format
         String dateFolder = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
         
@@ -254,9 +404,6 @@ public class MessageService {
         String finalLocationDetail = (locationDetail != null && !locationDetail.isEmpty()) 
                 ? locationDetail : DEFAULT_LOCATION_DETAIL;
         
-        log.info("Checking location data - lat: {}, long: {}, detail: {}", latitude, longitude, locationDetail);
-        log.info("Using location - lat: {}, long: {}, detail: {}", finalLatitude, finalLongitude, finalLocationDetail);
-        
         // Build location info JSON (always create JSON with location data)
         // Format: {"location":{"detail":"Hà Nội, Việt Nam","lat":21.0285,"long":105.8542}}
         String infoDataJson = null;
@@ -272,24 +419,25 @@ public class MessageService {
             com.fasterxml.jackson.databind.ObjectMapper mapper = 
                     new com.fasterxml.jackson.databind.ObjectMapper();
             infoDataJson = mapper.writeValueAsString(rootMap);
-            log.info("Location JSON created successfully: {}", infoDataJson);
         } catch (Exception e) {
             log.error("Failed to serialize location data", e);
         }
         
         final String finalInfoDataJson = infoDataJson;
-        log.info("Final infoDataJson value: {}", finalInfoDataJson);
         
-        return Flux.fromIterable(files)
-                .flatMap(file -> {
+        return files
+                .flatMapSequential(file -> {
                     // New folder structure: group_code/messages/messageId/yyyy-MM-dd
                     String folder = groupCode + "/messages/" + messageId + "/" + dateFolder;
-                    return fileStorageService.uploadFile(file, folder)
-                            .flatMap(uploadResponse -> {
-                                log.info("Building MessageAttachment for file: {}", uploadResponse.getFileName());
-                                log.info("infoData value before building: {}", finalInfoDataJson);
-                                
-                                MessageAttachment attachment = MessageAttachment.builder()
+                    // Dimensions and duration are read from the headers while the file streams to storage
+                    MediaMetadataProbe probe = MediaMetadataProbe.forFileName(file.fileName());
+                    Flux<DataBuffer> content = file.content().doOnNext(probe::accept);
+                    return workerPools.uploads()
+                            .run(senderId, fileStorageService.uploadContent(content, file.fileName(), folder))
+                            .doOnNext(uploadResponse -> storedPaths.add(uploadResponse.getStoragePath()))
+                            .map(uploadResponse -> {
+                                MediaMetadata metadata = probe.result();
+                                return MessageAttachment.builder()
                                         .messageId(messageId)
                                         .fileName(uploadResponse.getFileName())
                                         .fileType(uploadResponse.getFileType())
@@ -297,81 +445,102 @@ public class MessageService {
                                         .fileUrl(uploadResponse.getFileUrl())
                                         .storagePath(uploadResponse.getStoragePath())
                                         .thumbnailUrl(uploadResponse.getThumbnailUrl())
+                                        .previewUrl(uploadResponse.getPreviewUrl())
+                                        // Inline placeholder of images, sent with new_message
+                                        .placeholder(uploadResponse.getPlaceholder())
+                                        .width(metadata.getWidth())
+                                        .height(metadata.getHeight())
+                                        .duration(metadata.getDuration())
                                         .createdAt(LocalDateTime.now())
                                         .infoData(finalInfoDataJson)
                                         .build();
-                                
-                                log.info("=== MessageAttachment object created ===");
-                                log.info("Attachment ID: {}", attachment.getId());
-                                log.info("Message ID: {}", attachment.getMessageId());
-                                log.info("File Name: {}", attachment.getFileName());
-                                log.info("File Type: {}", attachment.getFileType());
-                                log.info("infoData: {}", attachment.getInfoData());
-                                log.info("infoData is null: {}", attachment.getInfoData() == null);
-                                
-                                return attachmentRepository.save(attachment)
-                                        .doOnSuccess(saved -> {
-                                            log.info("=== MessageAttachment saved successfully ===");
-                                            log.info("Saved Attachment ID: {}", saved.getId());
-                                            log.info("Saved infoData: {}", saved.getInfoData());
-                                            log.info("Saved infoData is null: {}", saved.getInfoData() == null);
-                                        })
-                                        .doOnError(error -> {
-                                            log.error("Error saving MessageAttachment", error);
-                                        });
                             });
-                });
+                }, workerPoolProperties.getUploads().getPerRequest());
+    }
+    
+    /**
+     * Keep placeholders in file order while they fit in the per-message budget; the other images
+     * show their thumbnail status only. Keeps new_message small for every recipient.
+     */
+    private static void limitPlaceholders(List<MessageAttachment> attachments) {
+        int remaining = MAX_PLACEHOLDER_CHARS_PER_MESSAGE;
+        for (MessageAttachment attachment : attachments) {
+            String placeholder = attachment.getPlaceholder();
+            if (placeholder == null) {
+                continue;
+            }
+            if (placeholder.length() > remaining) {
+                attachment.setPlaceholder(null);
+            } else {
+                remaining -= placeholder.length();
+            }
+        }
     }
     
     private Mono<MessageResponse> buildMessageResponse(
             Message message, 
             List<MessageAttachment> attachments) {
         
-        return userRepository.findById(message.getSenderId())
-                .map(sender -> {
-                    List<AttachmentResponse> attachmentResponses = attachments.stream()
-                            .map(att -> AttachmentResponse.builder()
-                                    .id(att.getId())
-                                    .fileName(att.getFileName())
-                                    .fileType(att.getFileType())
-                                    .fileSize(att.getFileSize())
-                                    .fileUrl(att.getFileUrl())
-                                    .thumbnailUrl(att.getThumbnailUrl())
-                                    .infoData(att.getInfoData())
-                                    .build())
-                            .toList();
-                    
-                    return MessageResponse.builder()
-                            .id(message.getId())
-                            .groupId(message.getGroupId())
-                            .senderId(message.getSenderId())
-                            .senderName(sender.getDisplayName())
-                            .senderAvatar(sender.getAvatarUrl())
-                            .content(message.getContent())
-                            .messageType(message.getMessageType().name())
-                            .attachments(attachmentResponses)
-                            .createdAt(message.getCreatedAt())
-                            .build();
-                })
-                .defaultIfEmpty(MessageResponse.builder()
-                        .id(message.getId())
-                        .groupId(message.getGroupId())
-                        .senderId(message.getSenderId())
-                        .senderName("Unknown User")
-                        .content(message.getContent())
-                        .messageType(message.getMessageType().name())
-                        .attachments(List.of())
-                        .createdAt(message.getCreatedAt())
-                        .build());
+        return senderProfileCache.get(message.getSenderId())
+                .map(sender -> toMessageResponse(message, attachments, sender))
+                .defaultIfEmpty(toMessageResponse(message, attachments, null));
+    }
+    
+    private MessageResponse toMessageResponse(
+            Message message, 
+            List<MessageAttachment> attachments, 
+            SenderProfile sender) {
+        
+        List<AttachmentResponse> attachmentResponses = attachments.stream()
+                .map(MessageService::toAttachmentResponse)
+                .toList();
+        
+        return MessageResponse.builder()
+                .id(message.getId())
+                .groupId(message.getGroupId())
+                .senderId(message.getSenderId())
+                .senderName(sender != null ? sender.getDisplayName() : "Unknown User")
+                .senderAvatar(sender != null ? sender.getAvatarUrl() : null)
+                .content(message.getContent())
+                .messageType(message.getMessageType().name())
+                .attachments(attachmentResponses)
+                .createdAt(message.getCreatedAt())
+                .cursor(MessageCursor.encode(message.getCreatedAt(), message.getId()))
+                .build();
     }
     
     
-    private String determineMessageType(List<FilePart> files) {
-        if (files == null || files.isEmpty()) {
+    static AttachmentResponse toAttachmentResponse(MessageAttachment att) {
+        String thumbnailStatus = null;
+        if (att.getThumbnailUrl() != null) {
+            thumbnailStatus = ThumbnailService.STATUS_READY;
+        } else if (att.getFileType() != null && att.getFileType().startsWith("image/")) {
+            thumbnailStatus = ThumbnailService.STATUS_PENDING;
+        }
+        
+        return AttachmentResponse.builder()
+                .id(att.getId())
+                .fileName(att.getFileName())
+                .fileType(att.getFileType())
+                .fileSize(att.getFileSize())
+                .fileUrl(att.getFileUrl())
+                .thumbnailUrl(att.getThumbnailUrl())
+                .previewUrl(att.getPreviewUrl())
+                .placeholder(att.getPlaceholder())
+                .width(att.getWidth())
+                .height(att.getHeight())
+                .duration(att.getDuration())
+                .thumbnailStatus(thumbnailStatus)
+                .infoData(att.getInfoData())
+                .build();
+    }
+    
+    private String determineMessageType(List<MessageAttachment> attachments) {
+        if (attachments.isEmpty()) {
             return "TEXT";
         }
         
-        String firstFileName = files.get(0).filename().toLowerCase();
+        String firstFileName = attachments.get(0).getFileName().toLowerCase();
         if (firstFileName.matches(".*\\.(jpg|jpeg|png|gif|webp)$")) {
             return "IMAGE";
         } else if (firstFileName.matches(".*\\.(mp4|avi|mov|wmv|flv)$")) {
@@ -380,4 +549,10 @@ public class MessageService {
         
         return "FILE";
     }
+    
+    /**
+     * A file to attach: a multipart part or a completed chunked upload
+     */
+    private record AttachmentSource(String fileName, Flux<DataBuffer> content) {
+    }
 }
@@ -0,0 +1,35 @@
+package com.klkt.supervision.service;
+
+import com.klkt.supervision.config.WorkerPools;
+import com.klkt.supervision.exception.ServiceBusyException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * BCrypt on the bounded password pool. Each hash costs ~100ms of CPU and must never run on the event loop;
+ * when the pool and its queue are full (e.g. everybody logging in at shift start) callers get a 503 right away.
+ */
+@Service
+@RequiredArgsConstructor
+public class PasswordHashingService {
+    
+    static final int RETRY_AFTER_SECONDS = 2;
+    
+    private final PasswordEncoder passwordEncoder;
+    private final WorkerPools workerPools;
+    
+    public Mono<String> encode(String rawPassword) {
+        return busyAware(workerPools.password().submit(() -> passwordEncoder.encode(rawPassword)));
+    }
+    
+    public Mono<Boolean> matches(String rawPassword, String encodedPassword) {
+        return busyAware(workerPools.password().submit(() -> passwordEncoder.matches(rawPassword, encodedPassword)));
+    }
+    
+    private <T> Mono<T> busyAware(Mono<T> task) {
+        return task.onErrorMap(ServiceBusyException.class,
+                e -> new ServiceBusyException("Too many login requests, please retry shortly", RETRY_AFTER_SECONDS));
+    }
+}
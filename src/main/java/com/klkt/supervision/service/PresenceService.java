@@ -0,0 +1,450 @@
+package com.klkt.supervision.service;
+
+import com.klkt.supervision.dto.SSEEnvelope;
+import com.klkt.supervision.entity.User;
+import com.klkt.supervision.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * User presence driven by SSE connectivity, shared by all nodes on the SSE event bus.
+ * A node claims a user while it holds one of the user's SSE connections and for the grace period after the
+ * last one closed or after a login. The user is ONLINE while any node claims it and turns OFFLINE when the
+ * last claim is released, so reconnects, page reloads and moving to another node do not flap.
+ * Claims and status changes travel over the event bus; a change is written to users.status (in batches,
+ * one UPDATE per status and flush interval) and broadcast as presence_changed by the node that made it only.
+ * Nodes announce their claims periodically: claims of a node that went silent are dropped, and ONLINE rows
+ * that no node claims (left by a crash or restart) are set OFFLINE by one node.
+ * <p>
+ * Protocol, all envelopes carrying the sender's nodeId:
+ * <ul>
+ *   <li>PRESENCE_CLAIMED / PRESENCE_RELEASED: a node starts / stops claiming the listed users</li>
+ *   <li>PRESENCE_ANNOUNCED: the full claim list of a node every presence.announce-interval, replacing what
+ *       the others know about it; a node silent for three intervals is dropped</li>
+ *   <li>PRESENCE_STATUS: a status change made by the sender, applied to the status map of the others</li>
+ * </ul>
+ * The live node with the smallest ID is the leader: it takes users of dropped nodes offline and runs the
+ * reconcile every presence.reconcile-interval.
+ */
+@Slf4j
+@Service
+public class PresenceService {
+
+    // A node missing this many announcements in a row is considered gone
+    private static final int MISSED_ANNOUNCEMENTS = 3;
+
+    private final UserRepository userRepository;
+    private final SSEService sseService;
+    private final SSEEventBus eventBus;
+    private final GroupMembershipIndex membershipIndex;
+    private final Duration gracePeriod;
+    private final Duration flushInterval;
+    private final Duration announceInterval;
+    private final Duration reconcileInterval;
+    private final String nodeId;
+    private final long startedAt = System.currentTimeMillis();
+
+    // ----- Same on every node -----
+
+    // Status of every user seen since startup
+    private final Map<Long, User.UserStatus> statuses = new ConcurrentHashMap<>();
+
+    // userId -> nodes claiming the user
+    private final Map<Long, Set<String>> claims = new ConcurrentHashMap<>();
+
+    // nodeId -> time of its last envelope
+    private final Map<String, Long> nodesSeen = new ConcurrentHashMap<>();
+
+    // ----- This node only -----
+
+    private final Set<Long> localConnections = ConcurrentHashMap.newKeySet();
+
+    // userId -> time this node releases the user unless a connection opens before
+    private final Map<Long, Long> pendingOffline = new ConcurrentHashMap<>();
+
+    // Latest status per user not written yet, later changes overwrite earlier ones
+    private final Map<Long, User.UserStatus> unsaved = new ConcurrentHashMap<>();
+
+    private volatile long lastReconcile;
+
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong reconciled = new AtomicLong();
+
+    private Disposable ticker;
+    private Disposable announcer;
+
+    public PresenceService(UserRepository userRepository,
+                           SSEService sseService,
+                           SSEEventBus eventBus,
+                           GroupMembershipIndex membershipIndex,
+                           @Value("${presence.grace-period:30000}") long gracePeriodMillis,
+                           @Value("${presence.flush-interval:2000}") long flushIntervalMillis,
+                           @Value("${presence.announce-interval:10000}") long announceIntervalMillis,
+                           @Value("${presence.reconcile-interval:60000}") long reconcileIntervalMillis) {
+        this.userRepository = userRepository;
+        this.sseService = sseService;
+        this.eventBus = eventBus;
+        this.membershipIndex = membershipIndex;
+        this.gracePeriod = Duration.ofMillis(gracePeriodMillis);
+        this.flushInterval = Duration.ofMillis(flushIntervalMillis);
+        this.announceInterval = Duration.ofMillis(announceIntervalMillis);
+        this.reconcileInterval = Duration.ofMillis(reconcileIntervalMillis);
+        this.nodeId = eventBus.getNodeId();
+    }
+
+    @PostConstruct
+    public void start() {
+        eventBus.subscribe(this::apply);
+        sseService.addConnectionListener((userId, connected) -> {
+            if (connected) {
+                connected(userId);
+            } else {
+                localConnections.remove(userId);
+                pendingOffline.put(userId, System.currentTimeMillis() + gracePeriod.toMillis());
+            }
+        });
+
+        // One tick at a time: a slow flush skips ticks instead of overlapping
+        ticker = Flux.interval(flushInterval, flushInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> {
+                    expirePendingOffline();
+                    return flush();
+                }, 1)
+                .subscribe();
+
+        announcer = Flux.interval(Duration.ZERO, announceInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> {
+                    announce();
+                    dropSilentNodes();
+                    return reconcileIfDue();
+                }, 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.dispose();
+        }
+        if (announcer != null) {
+            announcer.dispose();
+        }
+        try {
+            flush().block(Duration.ofSeconds(5));
+        } catch (Exception e) {
+            log.warn("Failed to write presence on shutdown: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Login: ONLINE right away, and OFFLINE after the grace period unless an SSE connection opens
+     */
+    public void loggedIn(Long userId) {
+        claim(userId);
+        if (!localConnections.contains(userId)) {
+            pendingOffline.put(userId, System.currentTimeMillis() + gracePeriod.toMillis());
+        }
+        changeStatus(userId, User.UserStatus.ONLINE);
+    }
+
+    /**
+     * Logout ends the login's claim; the user goes OFFLINE only if no SSE connection is left on any node
+     */
+    public void loggedOut(Long userId) {
+        if (pendingOffline.remove(userId) != null && !localConnections.contains(userId)) {
+            release(userId);
+        }
+        if (!claims.containsKey(userId)) {
+            changeStatus(userId, User.UserStatus.OFFLINE);
+        }
+    }
+
+    /**
+     * Status picked by the user (AWAY / BUSY, or OFFLINE to appear offline)
+     */
+    public void setStatus(Long userId, User.UserStatus status) {
+        changeStatus(userId, status);
+    }
+
+    /**
+     * Current status, or null for users not seen since startup (the stored status applies)
+     */
+    public User.UserStatus getStatus(Long userId) {
+        return statuses.get(userId);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("online", statuses.values().stream().filter(status -> status != User.UserStatus.OFFLINE).count());
+        stats.put("claimed", claims.size());
+        stats.put("localConnections", localConnections.size());
+        stats.put("pendingOffline", pendingOffline.size());
+        stats.put("nodes", nodesSeen.size());
+        stats.put("unsaved", unsaved.size());
+        stats.put("changes", changes.get());
+        stats.put("flushes", flushes.get());
+        stats.put("rowsWritten", rowsWritten.get());
+        stats.put("reconciled", reconciled.get());
+        return stats;
+    }
+
+    private void connected(Long userId) {
+        localConnections.add(userId);
+        pendingOffline.remove(userId);
+        claim(userId);
+        // A connection does not override AWAY / BUSY chosen by the user
+        changeStatusIf(userId, User.UserStatus.ONLINE,
+                current -> current == null || current == User.UserStatus.OFFLINE);
+    }
+
+    private void expirePendingOffline() {
+        long now = System.currentTimeMillis();
+        pendingOffline.forEach((userId, offlineAt) -> {
+            if (offlineAt <= now && pendingOffline.remove(userId, offlineAt) && !localConnections.contains(userId)) {
+                release(userId);
+                // Still claimed by another node: that node takes the user offline when it releases it
+                if (!claims.containsKey(userId)) {
+                    changeStatus(userId, User.UserStatus.OFFLINE);
+                }
+            }
+        });
+    }
+
+    // ----- Event bus -----
+
+    private void claim(Long userId) {
+        Set<String> nodes = claims.get(userId);
+        if (nodes == null || !nodes.contains(nodeId)) {
+            publish(SSEEnvelope.Type.PRESENCE_CLAIMED, List.of(userId), null);
+        }
+    }
+
+    private void release(Long userId) {
+        publish(SSEEnvelope.Type.PRESENCE_RELEASED, List.of(userId), null);
+    }
+
+    /**
+     * Full claim list of this node: keeps it alive for the others and repairs envelopes they missed
+     */
+    private void announce() {
+        Set<Long> claimed = new HashSet<>(localConnections);
+        claimed.addAll(pendingOffline.keySet());
+        publish(SSEEnvelope.Type.PRESENCE_ANNOUNCED, new ArrayList<>(claimed), null);
+    }
+
+    private void publish(SSEEnvelope.Type type, List<Long> userIds, String data) {
+        eventBus.publish(SSEEnvelope.builder()
+                .type(type)
+                .userIds(userIds)
+                .data(data)
+                .build());
+    }
+
+    /**
+     * Envelopes of every node, this one included (the bus delivers them locally right away)
+     */
+    private void apply(SSEEnvelope envelope) {
+        String node = envelope.getNodeId();
+        switch (envelope.getType()) {
+            case PRESENCE_CLAIMED -> envelope.getUserIds().forEach(userId -> addClaim(userId, node));
+            case PRESENCE_RELEASED -> envelope.getUserIds().forEach(userId -> removeClaim(userId, node));
+            case PRESENCE_ANNOUNCED -> replaceClaims(node, new HashSet<>(envelope.getUserIds()));
+            case PRESENCE_STATUS -> {
+                if (!nodeId.equals(node)) {
+                    envelope.getUserIds().forEach(userId -> applyRemoteStatus(userId,
+                            User.UserStatus.valueOf(envelope.getData())));
+                }
+            }
+            default -> {
+                return;
+            }
+        }
+        nodesSeen.put(node, System.currentTimeMillis());
+    }
+
+    private void applyRemoteStatus(Long userId, User.UserStatus status) {
+        statuses.put(userId, status);
+        // Another node released the user before our claim reached it: the user is still here
+        if (status == User.UserStatus.OFFLINE && localConnections.contains(userId)) {
+            changeStatus(userId, User.UserStatus.ONLINE);
+        }
+    }
+
+    private void addClaim(Long userId, String node) {
+        claims.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(node);
+    }
+
+    private void removeClaim(Long userId, String node) {
+        claims.computeIfPresent(userId, (id, nodes) -> {
+            nodes.remove(node);
+            return nodes.isEmpty() ? null : nodes;
+        });
+    }
+
+    private void replaceClaims(String node, Set<Long> userIds) {
+        claims.keySet().forEach(userId -> {
+            if (!userIds.contains(userId)) {
+                removeClaim(userId, node);
+            }
+        });
+        userIds.forEach(userId -> addClaim(userId, node));
+    }
+
+    /**
+     * Forget nodes that stopped announcing; users they alone claimed are taken offline by one node
+     */
+    private void dropSilentNodes() {
+        long cutoff = System.currentTimeMillis() - MISSED_ANNOUNCEMENTS * announceInterval.toMillis();
+        List<String> silent = new ArrayList<>();
+        nodesSeen.forEach((node, seenAt) -> {
+            if (seenAt < cutoff && !node.equals(nodeId) && nodesSeen.remove(node, seenAt)) {
+                silent.add(node);
+            }
+        });
+        if (silent.isEmpty()) {
+            return;
+        }
+
+        Set<Long> orphaned = new HashSet<>();
+        claims.forEach((userId, nodes) -> {
+            if (nodes.stream().anyMatch(silent::contains)) {
+                silent.forEach(node -> removeClaim(userId, node));
+                if (!claims.containsKey(userId)) {
+                    orphaned.add(userId);
+                }
+            }
+        });
+        log.warn("Presence: nodes {} went silent, {} users lost their last claim", silent, orphaned.size());
+
+        if (isLeader()) {
+            orphaned.forEach(userId -> changeStatus(userId, User.UserStatus.OFFLINE));
+        }
+    }
+
+    /**
+     * One node (the smallest ID among the live ones) sets unclaimed ONLINE users OFFLINE in the database;
+     * AWAY / BUSY were picked by the user and stay.
+     */
+    private Mono<Void> reconcileIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - lastReconcile < reconcileInterval.toMillis() || !isLeader()) {
+            return Mono.empty();
+        }
+        lastReconcile = now;
+
+        return userRepository.updateUnclaimedToOffline(claims.keySet().toArray(new Long[0]))
+                .doOnNext(userId -> {
+                    reconciled.incrementAndGet();
+                    // Already written: only tell the other nodes and the clients
+                    statuses.put(userId, User.UserStatus.OFFLINE);
+                    broadcast(userId, User.UserStatus.OFFLINE);
+                })
+                .onErrorResume(e -> {
+                    log.error("Failed to reconcile stored presence", e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /**
+     * Whether this node is the one among the live nodes that runs cluster-wide chores (the smallest node ID).
+     * False for a few announcements after startup, until the other nodes and their claims are known.
+     */
+    public boolean isLeader() {
+        if (System.currentTimeMillis() - startedAt < MISSED_ANNOUNCEMENTS * announceInterval.toMillis()) {
+            return false;
+        }
+        return nodesSeen.keySet().stream().allMatch(node -> nodeId.compareTo(node) <= 0);
+    }
+
+    // ----- Status changes made by this node -----
+
+    private void changeStatus(Long userId, User.UserStatus status) {
+        changeStatusIf(userId, status, current -> current != status);
+    }
+
+    private void changeStatusIf(Long userId, User.UserStatus status,
+                                java.util.function.Predicate<User.UserStatus> condition) {
+        AtomicBoolean changed = new AtomicBoolean();
+        statuses.compute(userId, (id, current) -> {
+            if (condition.test(current) && current != status) {
+                changed.set(true);
+                return status;
+            }
+            return current;
+        });
+        if (changed.get()) {
+            changes.incrementAndGet();
+            unsaved.put(userId, status);
+            broadcast(userId, status);
+        }
+    }
+
+    /**
+     * presence_changed to everyone sharing a group with the user (live only, not replayed),
+     * and the new status to the other nodes
+     */
+    private void broadcast(Long userId, User.UserStatus status) {
+        publish(SSEEnvelope.Type.PRESENCE_STATUS, List.of(userId), status.name());
+
+        Set<Long> recipients = new HashSet<>();
+        membershipIndex.getGroupIds(userId).forEach(groupId -> recipients.addAll(membershipIndex.getRecipients(groupId)));
+        if (!recipients.isEmpty()) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("userId", userId);
+            data.put("status", status.name());
+            sseService.sendLiveOnlyToUsers(recipients, "presence_changed", data);
+        }
+    }
+
+    /**
+     * Write the pending changes, one UPDATE ... WHERE id IN (...) per status
+     */
+    private Mono<Void> flush() {
+        if (unsaved.isEmpty()) {
+            return Mono.empty();
+        }
+
+        Map<User.UserStatus, List<Long>> byStatus = new EnumMap<>(User.UserStatus.class);
+        unsaved.forEach((userId, status) -> {
+            if (unsaved.remove(userId, status)) {
+                byStatus.computeIfAbsent(status, key -> new ArrayList<>()).add(userId);
+            }
+        });
+
+        flushes.incrementAndGet();
+        return Flux.fromIterable(byStatus.entrySet())
+                .concatMap(batch -> userRepository.updateStatus(batch.getKey().name(), batch.getValue())
+                        .doOnNext(rowsWritten::addAndGet)
+                        .onErrorResume(e -> {
+                            log.error("Failed to write status {} for {} users, retrying with the next flush",
+                                    batch.getKey(), batch.getValue().size(), e);
+                            batch.getValue().forEach(userId -> unsaved.putIfAbsent(userId, batch.getKey()));
+                            return Mono.empty();
+                        }))
+                .then();
+    }
+}
@@ -0,0 +1,97 @@
+package com.klkt.supervision.service;
+
+import com.klkt.supervision.config.SSEProperties.SlowConsumerPolicy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.Exceptions;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single SSE stream of a user (one browser tab or device) with its own bounded buffer
+ */
+@Slf4j
+class SSEConnection {
+
+    static final String REASON_SLOW_CONSUMER = "slow_consumer";
+    static final String REASON_REPLAY_GAP = "replay_gap";
+    static final String REASON_EVENT_BUS_GAP = "event_bus_gap";
+
+    private static final AtomicLong ID_SEQUENCE = new AtomicLong();
+
+    private static final ServerSentEvent<String> RESYNC_EVENT =
+            controlEvent("resync_required", REASON_SLOW_CONSUMER);
+
+    @Getter
+    private final long id = ID_SEQUENCE.incrementAndGet();
+    @Getter
+    private final Long userId;
+
+    private final int bufferSize;
+    private final SlowConsumerPolicy policy;
+
+    // Unicast sink is drained without limit by the bounded buffer operator in asFlux()
+    private final Sinks.Many<ServerSentEvent<String>> sink = Sinks.many().unicast().onBackpressureBuffer();
+
+    // COALESCE: events were dropped since the client last caught up
+    private final AtomicBoolean gap = new AtomicBoolean(false);
+
+    // Time of the last event handed to this connection, used to skip heartbeats for active streams
+    private volatile long lastEventAt = System.currentTimeMillis();
+
+    SSEConnection(Long userId, int bufferSize, SlowConsumerPolicy policy) {
+        this.userId = userId;
+        this.bufferSize = bufferSize;
+        this.policy = policy;
+    }
+
+    Flux<ServerSentEvent<String>> asFlux() {
+        Flux<ServerSentEvent<String>> events = sink.asFlux();
+
+        return switch (policy) {
+            case DROP_OLDEST -> events.onBackpressureBuffer(bufferSize,
+                    dropped -> log.debug("Connection {} of user {} full, dropped oldest {} event",
+                            id, userId, dropped.event()),
+                    BufferOverflowStrategy.DROP_OLDEST);
+            case COALESCE -> events.onBackpressureBuffer(bufferSize,
+                    dropped -> gap.set(true),
+                    BufferOverflowStrategy.DROP_LATEST);
+            case DISCONNECT -> events.onBackpressureBuffer(bufferSize,
+                            dropped -> log.warn("Connection {} of user {} exceeded {} buffered events, disconnecting",
+                                    id, userId, bufferSize),
+                            BufferOverflowStrategy.ERROR)
+                    .onErrorResume(Exceptions::isOverflow, e -> Flux.just(controlEvent("disconnect", REASON_SLOW_CONSUMER)));
+        };
+    }
+
+    boolean isIdleSince(long timestamp) {
+        return lastEventAt <= timestamp;
+    }
+
+    synchronized void emit(ServerSentEvent<String> event) {
+        if (gap.compareAndSet(true, false)) {
+            sink.tryEmitNext(RESYNC_EVENT);
+        }
+        sink.tryEmitNext(event);
+        lastEventAt = System.currentTimeMillis();
+    }
+
+    synchronized void complete() {
+        sink.tryEmitComplete();
+    }
+
+    /**
+     * Build a stream control event (no ID, never replayed)
+     */
+    static ServerSentEvent<String> controlEvent(String eventType, String reason) {
+        return ServerSentEvent.<String>builder()
+                .event(eventType)
+                .data("{\"eventType\": \"" + eventType + "\", \"reason\": \"" + reason + "\"}")
+                .build();
+    }
+}
@@ -0,0 +1,414 @@
+package com.klkt.supervision.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.klkt.supervision.config.SSEProperties;
+import com.klkt.supervision.dto.SSEEnvelope;
+import io.r2dbc.postgresql.api.Notification;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+import reactor.util.retry.Retry;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Fan-out layer under SSEService. Every published envelope is delivered to the local listeners,
+ * and, depending on the implementation, to the listeners of the other application nodes.
+ */
+public interface SSEEventBus {
+    void publish(SSEEnvelope envelope);
+    void subscribe(Consumer<SSEEnvelope> listener);
+
+    /**
+     * ID of this node, set as nodeId on the envelopes it publishes
+     */
+    String getNodeId();
+
+    /**
+     * Called when envelopes of other nodes may have been lost (e.g. after a reconnect),
+     * so state built from them can be reloaded
+     */
+    void subscribeResync(Runnable listener);
+
+    Map<String, Object> getStats();
+}
+
+// ============= Single Node Implementation =============
+
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "sse.event-bus", havingValue = "local", matchIfMissing = true)
+class LocalSSEEventBus implements SSEEventBus {
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final List<Consumer<SSEEnvelope>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(SSEEnvelope envelope) {
+        envelope.setNodeId(nodeId);
+        listeners.forEach(listener -> listener.accept(envelope));
+    }
+
+    @Override
+    public void subscribe(Consumer<SSEEnvelope> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void subscribeResync(Runnable listener) {
+        // Nothing is ever lost between the local publisher and its listeners
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "local");
+        stats.put("nodeId", nodeId);
+        return stats;
+    }
+}
+
+// ============= PostgreSQL LISTEN/NOTIFY Implementation =============
+
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "sse.event-bus", havingValue = "postgres")
+class PostgresSSEEventBus implements SSEEventBus {
+
+    private static final String CHANNEL = "sse_events";
+
+    // PostgreSQL rejects NOTIFY payloads of 8000 bytes or more
+    private static final int MAX_PAYLOAD_BYTES = 7900;
+
+    // Larger envelopes go through sse_event_overflow; rows only need to outlive the NOTIFY round trip
+    private static final Duration OVERFLOW_RETENTION = Duration.ofMinutes(5);
+    private static final Duration OVERFLOW_CLEANUP_INTERVAL = Duration.ofMinutes(1);
+
+    private final ObjectMapper objectMapper;
+    private final DatabaseClient databaseClient;
+    private final R2dbcProperties r2dbcProperties;
+    private final SSEProperties sseProperties;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final List<Consumer<SSEEnvelope>> listeners = new CopyOnWriteArrayList<>();
+    private final List<Runnable> resyncListeners = new CopyOnWriteArrayList<>();
+    private final Sinks.Many<SSEEnvelope> outbound;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong listenGaps = new AtomicLong();
+    // Time the LISTEN connection was lost, 0 while it is up
+    private final AtomicLong disconnectedAt = new AtomicLong();
+    private volatile long lastGapMillis;
+
+    private Disposable notificationListener;
+    private Disposable notificationPublisher;
+    private Disposable overflowCleanup;
+
+    public PostgresSSEEventBus(ObjectMapper objectMapper, DatabaseClient databaseClient,
+                               R2dbcProperties r2dbcProperties, SSEProperties sseProperties) {
+        this.objectMapper = objectMapper;
+        this.databaseClient = databaseClient;
+        this.r2dbcProperties = r2dbcProperties;
+        this.sseProperties = sseProperties;
+        // Bounded: while the database is slow or down, envelopes for other nodes are dropped instead of piling up
+        this.outbound = Sinks.many().unicast()
+                .onBackpressureBuffer(Queues.<SSEEnvelope>get(sseProperties.getEventBusQueueSize()).get());
+    }
+
+    @PostConstruct
+    public void start() {
+        // Envelopes are sent in batches: one NOTIFY per batch instead of one per event
+        notificationPublisher = outbound.asFlux()
+                .bufferTimeout(sseProperties.getEventBusBatchSize(),
+                        Duration.ofMillis(sseProperties.getEventBusBatchDelay()))
+                .concatMap(this::notifyBatch)
+                .subscribe();
+
+        notificationListener = listen()
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> {
+                            disconnectedAt.compareAndSet(0, System.currentTimeMillis());
+                            log.warn("SSE event bus LISTEN connection lost, reconnecting", signal.failure());
+                        }))
+                // In order: a notification waiting for an overflow row holds back the ones behind it
+                .concatMap(this::onNotification)
+                .subscribe();
+
+        overflowCleanup = Flux.interval(OVERFLOW_CLEANUP_INTERVAL)
+                .concatMap(tick -> databaseClient.sql("DELETE FROM sse_event_overflow WHERE created_at < :cutoff")
+                        .bind("cutoff", LocalDateTime.now().minus(OVERFLOW_RETENTION))
+                        .then()
+                        .onErrorResume(e -> {
+                            log.warn("Failed to clean up sse_event_overflow: {}", e.getMessage());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+
+        log.info("PostgreSQL SSE event bus started on channel {} (node {})", CHANNEL, nodeId);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (notificationListener != null) {
+            notificationListener.dispose();
+        }
+        if (notificationPublisher != null) {
+            notificationPublisher.dispose();
+        }
+        if (overflowCleanup != null) {
+            overflowCleanup.dispose();
+        }
+    }
+
+    @Override
+    public void publish(SSEEnvelope envelope) {
+        envelope.setNodeId(nodeId);
+        // Local delivery happens right away, other nodes receive it through NOTIFY
+        listeners.forEach(listener -> listener.accept(envelope));
+        Sinks.EmitResult result;
+        synchronized (outbound) {
+            result = outbound.tryEmitNext(envelope);
+        }
+        if (result.isFailure()) {
+            long count = dropped.incrementAndGet();
+            if (count == 1 || count % 1000 == 0) {
+                log.warn("SSE event bus outbound queue full, {} envelopes for other nodes dropped so far", count);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<SSEEnvelope> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void subscribeResync(Runnable listener) {
+        resyncListeners.add(listener);
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "postgres");
+        stats.put("nodeId", nodeId);
+        stats.put("dropped", dropped.get());
+        stats.put("listening", disconnectedAt.get() == 0);
+        stats.put("listenGaps", listenGaps.get());
+        stats.put("lastGapMillis", lastGapMillis);
+        return stats;
+    }
+
+    /**
+     * LISTEN on a dedicated, non-pooled connection: notifications are bound to the session that listens
+     */
+    private Flux<Notification> listen() {
+        return Flux.defer(() -> {
+            ConnectionFactoryOptions.Builder options = ConnectionFactoryOptions
+                    .parse(r2dbcProperties.getUrl())
+                    .mutate();
+            if (r2dbcProperties.getUsername() != null) {
+                options.option(ConnectionFactoryOptions.USER, r2dbcProperties.getUsername());
+            }
+            if (r2dbcProperties.getPassword() != null) {
+                options.option(ConnectionFactoryOptions.PASSWORD, r2dbcProperties.getPassword());
+            }
+
+            return Mono.from(ConnectionFactories.get(options.build()).create())
+                    .cast(PostgresqlConnection.class)
+                    .flatMapMany(connection -> connection.createStatement("LISTEN " + CHANNEL)
+                            .execute()
+                            .flatMap(result -> result.getRowsUpdated())
+                            .doOnComplete(this::listening)
+                            .thenMany(connection.getNotifications())
+                            .doFinally(signal -> Mono.from(connection.close()).subscribe()));
+        }).concatWith(Mono.error(new IllegalStateException("LISTEN connection closed")));
+    }
+
+    /**
+     * LISTEN is (back) in place. NOTIFYs sent while it was down never reach this node: log the gap and let
+     * the listeners reload what they built from envelopes
+     */
+    private void listening() {
+        long lostAt = disconnectedAt.getAndSet(0);
+        if (lostAt == 0) {
+            return;
+        }
+        lastGapMillis = System.currentTimeMillis() - lostAt;
+        listenGaps.incrementAndGet();
+        log.warn("SSE event bus LISTEN restored after {} ms, envelopes of other nodes sent meanwhile are lost; resyncing",
+                lastGapMillis);
+        resyncListeners.forEach(listener -> {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                log.error("SSE event bus resync listener failed", e);
+            }
+        });
+    }
+
+    private Mono<Void> onNotification(Notification notification) {
+        String payload = notification.getParameter();
+        if (payload == null) {
+            return Mono.empty();
+        }
+
+        List<SSEEnvelope> envelopes;
+        try {
+            envelopes = objectMapper.readValue(payload, new TypeReference<List<SSEEnvelope>>() {});
+        } catch (Exception e) {
+            log.error("Failed to process SSE event bus notification", e);
+            return Mono.empty();
+        }
+
+        return Flux.fromIterable(envelopes)
+                // Envelopes of this node were already delivered locally when published
+                .filter(envelope -> !nodeId.equals(envelope.getNodeId()))
+                .concatMap(envelope -> envelope.getOverflowId() != null
+                        ? loadOverflow(envelope.getOverflowId())
+                        : Mono.just(envelope))
+                .doOnNext(envelope -> listeners.forEach(listener -> listener.accept(envelope)))
+                .then();
+    }
+
+    private Mono<SSEEnvelope> loadOverflow(Long overflowId) {
+        return databaseClient.sql("SELECT payload FROM sse_event_overflow WHERE id = :id")
+                .bind("id", overflowId)
+                .map((row, metadata) -> row.get("payload", String.class))
+                .one()
+                .map(json -> {
+                    try {
+                        return objectMapper.readValue(json, SSEEnvelope.class);
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Unreadable SSE overflow envelope " + overflowId, e);
+                    }
+                })
+                .switchIfEmpty(Mono.fromRunnable(() ->
+                        log.warn("SSE overflow envelope {} is gone, event not delivered on this node", overflowId)))
+                .onErrorResume(e -> {
+                    log.error("Failed to load SSE overflow envelope {}", overflowId, e);
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> notifyBatch(List<SSEEnvelope> batch) {
+        return Flux.fromIterable(batch)
+                .concatMap(this::toNotifiableJson)
+                .collectList()
+                .flatMapMany(jsons -> Flux.fromIterable(toPayloads(jsons)))
+                .concatMap(payload -> databaseClient.sql("SELECT pg_notify(:channel, :payload)")
+                        .bind("channel", CHANNEL)
+                        .bind("payload", payload)
+                        .then())
+                .onErrorResume(e -> {
+                    log.error("Failed to publish {} SSE envelopes to other nodes", batch.size(), e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /**
+     * Serialized envelope, or a pointer to its sse_event_overflow row when it does not fit in a NOTIFY
+     * payload (e.g. new_message with many image placeholders). The row is committed before the pointer
+     * is sent.
+     */
+    private Mono<String> toNotifiableJson(SSEEnvelope envelope) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(envelope);
+        } catch (Exception e) {
+            log.error("Failed to serialize SSE envelope {}", envelope.getEventType(), e);
+            return Mono.empty();
+        }
+        if (json.getBytes(StandardCharsets.UTF_8).length + 2 <= MAX_PAYLOAD_BYTES) {
+            return Mono.just(json);
+        }
+
+        return databaseClient.sql("INSERT INTO sse_event_overflow (payload, created_at) VALUES (:payload, :createdAt) "
+                        + "RETURNING id")
+                .bind("payload", json)
+                .bind("createdAt", LocalDateTime.now())
+                .map((row, metadata) -> row.get("id", Long.class))
+                .one()
+                .map(overflowId -> {
+                    SSEEnvelope pointer = SSEEnvelope.builder()
+                            .nodeId(envelope.getNodeId())
+                            .eventType(envelope.getEventType())
+                            .overflowId(overflowId)
+                            .build();
+                    try {
+                        return objectMapper.writeValueAsString(pointer);
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Failed to serialize SSE overflow pointer", e);
+                    }
+                })
+                .onErrorResume(e -> {
+                    log.error("Failed to store SSE {} event of {} bytes for other nodes",
+                            envelope.getEventType(), json.length(), e);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Pack serialized envelopes into JSON arrays that fit in a single NOTIFY payload
+     */
+    private List<String> toPayloads(List<String> jsons) {
+        List<String> payloads = new ArrayList<>();
+        StringBuilder current = new StringBuilder("[");
+        int currentBytes = 1;
+
+        for (String json : jsons) {
+            int jsonBytes = json.getBytes(StandardCharsets.UTF_8).length;
+            if (currentBytes + jsonBytes + 2 > MAX_PAYLOAD_BYTES) {
+                payloads.add(current.append(']').toString());
+                current = new StringBuilder("[");
+                currentBytes = 1;
+            }
+            if (currentBytes > 1) {
+                current.append(',');
+                currentBytes++;
+            }
+            current.append(json);
+            currentBytes += jsonBytes;
+        }
+
+        if (currentBytes > 1) {
+            payloads.add(current.append(']').toString());
+        }
+        return payloads;
+    }
+}
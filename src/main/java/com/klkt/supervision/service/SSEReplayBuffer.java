@@ -0,0 +1,70 @@
+package com.klkt.supervision.service;
+
+import org.springframework.http.codec.ServerSentEvent;
+
+import java.util.List;
+
+/**
+ * Fixed-size ring of recent SSE events of a group or user, used to resume streams from Last-Event-ID
+ */
+class SSEReplayBuffer {
+
+    private final long[] ids;
+    private final ServerSentEvent<?>[] events;
+    private int head = 0; // next write position
+    private int size = 0;
+
+    // Events with an ID up to this value are no longer available for replay
+    private long evictedUpTo;
+
+    private long lastId;
+    private long lastAppendAt = System.currentTimeMillis();
+
+    SSEReplayBuffer(int capacity, long floorId) {
+        this.ids = new long[capacity];
+        this.events = new ServerSentEvent<?>[capacity];
+        this.evictedUpTo = floorId;
+    }
+
+    synchronized void append(long id, ServerSentEvent<String> event) {
+        if (size == ids.length) {
+            evictedUpTo = Math.max(evictedUpTo, ids[head]);
+        } else {
+            size++;
+        }
+        ids[head] = id;
+        events[head] = event;
+        head = (head + 1) % ids.length;
+        lastId = Math.max(lastId, id);
+        lastAppendAt = System.currentTimeMillis();
+    }
+
+    synchronized boolean isIdleSince(long cutoffMillis) {
+        return lastAppendAt < cutoffMillis;
+    }
+
+    /**
+     * Highest event ID appended, 0 when empty
+     */
+    synchronized long lastId() {
+        return lastId;
+    }
+
+    /**
+     * Whether every event after the given ID is still in the buffer
+     */
+    synchronized boolean covers(long lastEventId) {
+        return lastEventId >= evictedUpTo;
+    }
+
+    @SuppressWarnings("unchecked")
+    synchronized void collectAfter(long lastEventId, List<ServerSentEvent<String>> target) {
+        int start = (head - size + ids.length) % ids.length;
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % ids.length;
+            if (ids[index] > lastEventId) {
+                target.add((ServerSentEvent<String>) events[index]);
+            }
+        }
+    }
+}
@@ -1,24 +1,33 @@
 package com.klkt.supervision.service;
 
+import com.klkt.supervision.config.SSEProperties;
+import com.klkt.supervision.dto.SSEEnvelope;
 import com.klkt.supervision.dto.SSEMessage;
-import com.klkt.supervision.entity.User;
-import com.klkt.supervision.repository.GroupMemberRepository;
-import com.klkt.supervision.repository.UserRepository;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -26,81 +35,232 @@ import java.util.concurrent.ConcurrentHashMap;
 public class SSEService {
     
     private final ObjectMapper objectMapper;
-    private final GroupMemberRepository groupMemberRepository;
-    private final UserRepository userRepository;
+    private final GroupMembershipIndex membershipIndex;
+    private final SSEProperties sseProperties;
+    private final SSEEventBus eventBus;
     
-    // Map to store SSE sinks for each user
-    private final Map<Long, Sinks.Many<ServerSentEvent<String>>> userSinks = new ConcurrentHashMap<>();
+    // userId -> (connectionId -> connection), one entry per open tab/device
+    private final Map<Long, Map<Long, SSEConnection>> userConnections = new ConcurrentHashMap<>();
+    
+    // Monotonic event IDs derived from the clock so IDs keep growing across restarts and nodes
+    private final long firstEventId = System.currentTimeMillis() * 1000;
+    private final AtomicLong eventIdSequence = new AtomicLong(firstEventId);
+    
+    // Recent events per group and per user, replayed on reconnect with Last-Event-ID
+    private final Map<Long, SSEReplayBuffer> groupReplayBuffers = new ConcurrentHashMap<>();
+    private final Map<Long, SSEReplayBuffer> userReplayBuffers = new ConcurrentHashMap<>();
+    
+    // Idle buffers are dropped; events up to the highest ID they held can no longer be replayed
+    private final AtomicLong replayFloor = new AtomicLong(firstEventId);
+    
+    // Single ticker sending heartbeats to all idle connections
+    private Disposable heartbeatTicker;
+    
+    // Called with (userId, true) when a user's first connection opens and (userId, false) when the last one closes
+    private final List<BiConsumer<Long, Boolean>> connectionListeners = new CopyOnWriteArrayList<>();
+    
+    @PostConstruct
+    public void start() {
+        eventBus.subscribe(this::deliverLocally);
+        eventBus.subscribeResync(this::requireResync);
+        
+        Duration interval = Duration.ofMillis(sseProperties.getHeartbeatInterval());
+        heartbeatTicker = Flux.interval(interval, interval)
+                .subscribe(tick -> {
+                            sendHeartbeats(interval);
+                            evictIdleReplayBuffers();
+                        },
+                        error -> log.error("SSE heartbeat ticker failed", error));
+        log.info("SSE heartbeat ticker started with interval {}", interval);
+    }
+    
+    @PreDestroy
+    public void stop() {
+        if (heartbeatTicker != null) {
+            heartbeatTicker.dispose();
+        }
+    }
     
     /**
-     * Subscribe user to SSE stream
+     * Send one shared heartbeat event to every connection that had no event during the last half interval
      */
-    public Flux<ServerSentEvent<String>> subscribe(Long userId) {
-        log.info("User {} subscribing to SSE stream", userId);
+    private void sendHeartbeats(Duration interval) {
+        long idleSince = System.currentTimeMillis() - interval.toMillis() / 2;
+        ServerSentEvent<String> heartbeat = ServerSentEvent.<String>builder()
+                .event("heartbeat")
+                .data("{\"timestamp\": \"" + LocalDateTime.now() + "\"}")
+                .build();
         
-        // Create a new sink for this user
-        Sinks.Many<ServerSentEvent<String>> sink = Sinks.many()
-                .multicast()
-                .onBackpressureBuffer();
+        userConnections.values().forEach(connections -> connections.values().forEach(connection -> {
+            if (connection.isIdleSince(idleSince)) {
+                connection.emit(heartbeat);
+            }
+        }));
+    }
+    
+    /**
+     * Events of other nodes were lost: every local connection reloads its state
+     */
+    private void requireResync() {
+        ServerSentEvent<String> resync = SSEConnection.controlEvent("resync_required", SSEConnection.REASON_EVENT_BUS_GAP);
+        userConnections.values().forEach(connections -> connections.values().forEach(connection -> connection.emit(resync)));
+    }
+    
+    /**
+     * Drop the replay buffers of groups and users without events for sse.replay-idle-ttl, so the maps do not
+     * keep every group and user ever seen. Clients resuming from before a dropped buffer's last event
+     * get resync_required.
+     */
+    private void evictIdleReplayBuffers() {
+        long cutoff = System.currentTimeMillis() - sseProperties.getReplayIdleTtl();
+        int evicted = evictIdle(groupReplayBuffers, cutoff) + evictIdle(userReplayBuffers, cutoff);
+        if (evicted > 0) {
+            log.debug("Dropped {} idle SSE replay buffers", evicted);
+        }
+    }
+    
+    private int evictIdle(Map<Long, SSEReplayBuffer> buffers, long cutoff) {
+        AtomicInteger evicted = new AtomicInteger();
+        buffers.keySet().forEach(key -> buffers.computeIfPresent(key, (id, buffer) -> {
+            if (!buffer.isIdleSince(cutoff)) {
+                return buffer;
+            }
+            replayFloor.accumulateAndGet(buffer.lastId(), Math::max);
+            evicted.incrementAndGet();
+            return null;
+        }));
+        return evicted.get();
+    }
+    
+    /**
+     * Subscribe user to SSE stream, replaying events missed since lastEventId when it is given
+     */
+    public Flux<ServerSentEvent<String>> subscribe(Long userId, Long lastEventId) {
+        SSEConnection connection = new SSEConnection(userId,
+                sseProperties.getBufferSize(), sseProperties.getSlowConsumerPolicy());
+        log.info("User {} subscribing to SSE stream (connection {}, last event {})",
+                userId, connection.getId(), lastEventId);
         
-        userSinks.put(userId, sink);
+        // Register before collecting the replay so no event falls between the two
+        AtomicBoolean firstConnection = new AtomicBoolean();
+        userConnections.compute(userId, (id, connections) -> {
+            Map<Long, SSEConnection> updated = connections != null ? connections : new ConcurrentHashMap<>();
+            firstConnection.set(updated.isEmpty());
+            updated.put(connection.getId(), connection);
+            return updated;
+        });
+        if (firstConnection.get()) {
+            notifyConnectionListeners(userId, true);
+        }
         
-        // Send initial connection event
-        sendToUser(userId, "connected", Map.of(
+        // Send initial connection event to this connection only
+        String connectedData = serialize("connected", Map.of(
                 "message", "Connected to chat service",
                 "userId", userId
         ));
+        ServerSentEvent<String> connected = connectedData != null
+                ? ServerSentEvent.<String>builder().event("connected").data(connectedData).build()
+                : null;
         
-        // Create heartbeat to keep connection alive
-        Flux<ServerSentEvent<String>> heartbeat = Flux.interval(Duration.ofSeconds(30))
-                .map(seq -> ServerSentEvent.<String>builder()
-                        .event("heartbeat")
-                        .data("{\"timestamp\": \"" + LocalDateTime.now() + "\"}")
-                        .build());
+        List<ServerSentEvent<String>> replay = lastEventId != null
+                ? collectReplay(userId, lastEventId)
+                : List.of();
+        Set<String> replayedIds = replay.stream()
+                .map(ServerSentEvent::id)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
         
-        // Merge heartbeat with user-specific events
-        return Flux.merge(
-                sink.asFlux()
-                        .doOnCancel(() -> {
-                            log.info("User {} unsubscribed from SSE stream", userId);
-                            userSinks.remove(userId);
-                        })
-                        .doOnError(error -> {
-                            log.error("Error in SSE stream for user {}", userId, error);
-                            userSinks.remove(userId);
-                        }),
-                heartbeat
-        );
+        // Live events already sent by the replay are skipped. By ID rather than by the highest replayed ID:
+        // events from other nodes can arrive out of ID order, and one older than the replay was never sent.
+        Flux<ServerSentEvent<String>> live = connection.asFlux();
+        if (!replayedIds.isEmpty()) {
+            live = live.filter(event -> event.id() == null || !replayedIds.contains(event.id()));
+        }
+        
+        return Flux.concat(
+                        connected != null ? Flux.just(connected) : Flux.<ServerSentEvent<String>>empty(),
+                        Flux.fromIterable(replay),
+                        live)
+                .doOnError(error -> log.error("Error in SSE stream for user {}", userId, error))
+                .doFinally(signal -> {
+                    log.info("User {} unsubscribed from SSE stream (connection {}, {})",
+                            userId, connection.getId(), signal);
+                    unregister(connection);
+                });
     }
     
     /**
-     * Send event to specific user
+     * Collect events after lastEventId from the user's buffer and the buffers of groups visible to the user.
+     * Returns a single resync_required event when part of the gap is no longer buffered.
      */
-    public void sendToUser(Long userId, String eventType, Object data) {
-        Sinks.Many<ServerSentEvent<String>> sink = userSinks.get(userId);
-        if (sink != null) {
+    private List<ServerSentEvent<String>> collectReplay(Long userId, long lastEventId) {
+        List<SSEReplayBuffer> buffers = new ArrayList<>();
+        SSEReplayBuffer userBuffer = userReplayBuffers.get(userId);
+        if (userBuffer != null) {
+            buffers.add(userBuffer);
+        }
+        if (membershipIndex.isAdmin(userId)) {
+            buffers.addAll(groupReplayBuffers.values());
+        } else {
+            membershipIndex.getGroupIds(userId).forEach(groupId -> {
+                SSEReplayBuffer groupBuffer = groupReplayBuffers.get(groupId);
+                if (groupBuffer != null) {
+                    buffers.add(groupBuffer);
+                }
+            });
+        }
+        
+        boolean covered = membershipIndex.isLoaded()
+                && lastEventId >= replayFloor.get()
+                && buffers.stream().allMatch(buffer -> buffer.covers(lastEventId));
+        if (!covered) {
+            log.info("Replay gap for user {} after event {}, requesting resync", userId, lastEventId);
+            return List.of(SSEConnection.controlEvent("resync_required", SSEConnection.REASON_REPLAY_GAP));
+        }
+        
+        List<ServerSentEvent<String>> replay = new ArrayList<>();
+        buffers.forEach(buffer -> buffer.collectAfter(lastEventId, replay));
+        replay.sort(Comparator.comparingLong(SSEService::eventId));
+        log.debug("Replaying {} events to user {} after event {}", replay.size(), userId, lastEventId);
+        return replay;
+    }
+    
+    private void unregister(SSEConnection connection) {
+        AtomicBoolean lastConnection = new AtomicBoolean();
+        userConnections.computeIfPresent(connection.getUserId(), (id, connections) -> {
+            if (connections.remove(connection.getId()) != null && connections.isEmpty()) {
+                lastConnection.set(true);
+                return null;
+            }
+            return connections.isEmpty() ? null : connections;
+        });
+        if (lastConnection.get()) {
+            notifyConnectionListeners(connection.getUserId(), false);
+        }
+    }
+    
+    /**
+     * Follow users going online (first SSE connection) and offline (last connection closed) on this node
+     */
+    public void addConnectionListener(BiConsumer<Long, Boolean> listener) {
+        connectionListeners.add(listener);
+    }
+    
+    private void notifyConnectionListeners(Long userId, boolean connected) {
+        connectionListeners.forEach(listener -> {
             try {
-                SSEMessage message = SSEMessage.builder()
-                        .eventType(eventType)
-                        .data(data)
-                        .timestamp(LocalDateTime.now())
-                        .build();
-                
-                String jsonData = objectMapper.writeValueAsString(message);
-                
-                ServerSentEvent<String> event = ServerSentEvent.<String>builder()
-                        .event(eventType)
-                        .data(jsonData)
-                        .build();
-                
-                sink.tryEmitNext(event);
-                log.debug("Sent {} event to user {}", eventType, userId);
+                listener.accept(userId, connected);
             } catch (Exception e) {
-                log.error("Failed to send event to user {}", userId, e);
+                log.error("SSE connection listener failed for user {}", userId, e);
             }
-        } else {
-            log.debug("User {} not subscribed to SSE stream", userId);
-        }
+        });
+    }
+    
+    /**
+     * Send event to specific user
+     */
+    public void sendToUser(Long userId, String eventType, Object data) {
+        sendToUsers(List.of(userId), eventType, data);
     }
     
     /**
@@ -110,73 +270,191 @@ public class SSEService {
     public void sendToGroup(Long groupId, String eventType, Object data) {
         log.info("Broadcasting {} event to group {}", eventType, groupId);
         
-        // Get group members and all ADMIN users
-        Mono<Set<Long>> memberIdsMono = groupMemberRepository.findByGroupId(groupId)
-                .map(member -> member.getUserId())
-                .collectList()
-                .flatMap(memberIds -> {
-                    // Also get all ADMIN users to include them in the broadcast
-                    return userRepository.findAll()
-                            .filter(user -> user.getRole() != null && 
-                                    user.getRole() == User.UserRole.ADMIN)
-                            .map(User::getId)
-                            .collectList()
-                            .map(adminIds -> {
-                                Set<Long> allUserIds = new HashSet<>(memberIds);
-                                allUserIds.addAll(adminIds);
-                                return allUserIds;
-                            });
-                });
+        // Serialize once, every node and every recipient shares the same payload
+        String json = serialize(eventType, data);
+        if (json != null) {
+            eventBus.publish(SSEEnvelope.builder()
+                    .type(SSEEnvelope.Type.GROUP_EVENT)
+                    .groupId(groupId)
+                    .eventId(nextEventId())
+                    .eventType(eventType)
+                    .data(json)
+                    .build());
+        }
+    }
+    
+    /**
+     * Send event to multiple users
+     */
+    public void sendToUsers(Iterable<Long> userIds, String eventType, Object data) {
+        publishToUsers(userIds, eventType, data, false);
+    }
+    
+    /**
+     * Send an event that only matters while it is fresh (presence_changed). It is not kept in the users'
+     * replay buffers, so a burst of them cannot evict the events a reconnecting client needs.
+     */
+    public void sendLiveOnlyToUsers(Iterable<Long> userIds, String eventType, Object data) {
+        publishToUsers(userIds, eventType, data, true);
+    }
+    
+    private void publishToUsers(Iterable<Long> userIds, String eventType, Object data, boolean liveOnly) {
+        String json = serialize(eventType, data);
+        if (json != null) {
+            List<Long> recipients = new ArrayList<>();
+            userIds.forEach(recipients::add);
+            eventBus.publish(SSEEnvelope.builder()
+                    .type(SSEEnvelope.Type.USER_EVENT)
+                    .userIds(recipients)
+                    .eventId(liveOnly ? null : nextEventId())
+                    .eventType(eventType)
+                    .data(json)
+                    .liveOnly(liveOnly)
+                    .build());
+        }
+    }
+    
+    /**
+     * Deliver an event from the event bus to the connections of this node
+     */
+    private void deliverLocally(SSEEnvelope envelope) {
+        if (envelope.getType() != SSEEnvelope.Type.GROUP_EVENT && envelope.getType() != SSEEnvelope.Type.USER_EVENT) {
+            return;
+        }
+        
+        if (envelope.isLiveOnly()) {
+            // No ID: the client's Last-Event-ID stays on the last replayable event
+            ServerSentEvent<String> event = ServerSentEvent.<String>builder()
+                    .event(envelope.getEventType())
+                    .data(envelope.getData())
+                    .build();
+            envelope.getUserIds().forEach(userId -> emit(userId, event));
+            return;
+        }
+        
+        // Keep IDs of this node ahead of every event it has seen, so they stay roughly ordered across nodes
+        long id = envelope.getEventId();
+        eventIdSequence.accumulateAndGet(id, Math::max);
         
-        memberIdsMono.subscribe(allUserIds -> {
+        ServerSentEvent<String> event = ServerSentEvent.<String>builder()
+                .id(String.valueOf(id))
+                .event(envelope.getEventType())
+                .data(envelope.getData())
+                .build();
+        
+        if (envelope.getType() == SSEEnvelope.Type.GROUP_EVENT) {
+            deliverToGroup(envelope.getGroupId(), id, event);
+        } else {
+            deliverToUsers(envelope.getUserIds(), id, event);
+        }
+    }
+    
+    private void deliverToGroup(Long groupId, long id, ServerSentEvent<String> event) {
+        appendToReplay(groupReplayBuffers, groupId, sseProperties.getReplayGroupBufferSize(), id, event);
+        
+        // Get group members and all ADMIN users (served from the in-memory index)
+        membershipIndex.resolveRecipients(groupId).subscribe(allUserIds -> {
             log.debug("Found {} total recipients (members + admins) for group {}", 
                     allUserIds.size(), groupId);
-            allUserIds.forEach(userId -> {
-                if (userSinks.containsKey(userId)) {
-                    sendToUser(userId, eventType, data);
-                } else {
-                    log.debug("User {} is not connected, skipping SSE broadcast", userId);
-                }
-            });
+            allUserIds.forEach(userId -> emit(userId, event));
         }, error -> {
             log.error("Error querying group members/admins for group {}", groupId, error);
             // Fallback: send to all connected users if query fails
             log.warn("Falling back to broadcast to all connected users");
-            userSinks.keySet().forEach(userId -> {
-                sendToUser(userId, eventType, data);
-            });
+            userConnections.keySet().forEach(userId -> emit(userId, event));
         });
     }
     
+    private void deliverToUsers(List<Long> userIds, long id, ServerSentEvent<String> event) {
+        // The same instance is buffered for replay and handed to every connected recipient
+        userIds.forEach(userId -> {
+            appendToReplay(userReplayBuffers, userId, sseProperties.getReplayUserBufferSize(), id, event);
+            emit(userId, event);
+        });
+    }
+    
+    private long nextEventId() {
+        return eventIdSequence.updateAndGet(last -> Math.max(last + 1, System.currentTimeMillis() * 1000));
+    }
+    
     /**
-     * Send event to multiple users
+     * Append inside compute, so the eviction cannot drop a buffer between lookup and append
      */
-    public void sendToUsers(Iterable<Long> userIds, String eventType, Object data) {
-        userIds.forEach(userId -> sendToUser(userId, eventType, data));
+    private void appendToReplay(Map<Long, SSEReplayBuffer> buffers, Long key, int capacity,
+                                long id, ServerSentEvent<String> event) {
+        buffers.compute(key, (k, buffer) -> {
+            // Nothing was sent to a new buffer's group/user since its previous buffer was dropped (the
+            // replay floor covers that one), so it covers everything since the first event ID of this instance
+            SSEReplayBuffer target = buffer != null ? buffer : new SSEReplayBuffer(capacity, firstEventId);
+            target.append(id, event);
+            return target;
+        });
+    }
+    
+    /**
+     * Encode event payload to JSON, returns null if serialization fails
+     */
+    private String serialize(String eventType, Object data) {
+        try {
+            SSEMessage message = SSEMessage.builder()
+                    .eventType(eventType)
+                    .data(data)
+                    .timestamp(LocalDateTime.now())
+                    .build();
+            
+            return objectMapper.writeValueAsString(message);
+        } catch (Exception e) {
+            log.error("Failed to serialize {} event", eventType, e);
+            return null;
+        }
+    }
+    
+    private static long eventId(ServerSentEvent<String> event) {
+        return Long.parseLong(event.id());
+    }
+    
+    private void emit(Long userId, ServerSentEvent<String> event) {
+        Map<Long, SSEConnection> connections = userConnections.get(userId);
+        if (connections != null) {
+            connections.values().forEach(connection -> connection.emit(event));
+            log.debug("Sent {} event to user {} ({} connections)", event.event(), userId, connections.size());
+        } else {
+            log.debug("User {} is not connected, skipping SSE event", userId);
+        }
     }
     
     /**
      * Check if user is connected
      */
     public boolean isUserConnected(Long userId) {
-        return userSinks.containsKey(userId);
+        return userConnections.containsKey(userId);
     }
     
     /**
      * Get count of connected users
      */
     public int getConnectedUserCount() {
-        return userSinks.size();
+        return userConnections.size();
+    }
+    
+    /**
+     * Get count of open connections across all users
+     */
+    public int getConnectionCount() {
+        return userConnections.values().stream()
+                .mapToInt(Map::size)
+                .sum();
     }
     
     /**
-     * Disconnect user
+     * Disconnect all connections of a user
      */
     public void disconnectUser(Long userId) {
-        Sinks.Many<ServerSentEvent<String>> sink = userSinks.remove(userId);
-        if (sink != null) {
-            sink.tryEmitComplete();
-            log.info("User {} disconnected from SSE stream", userId);
+        Map<Long, SSEConnection> connections = userConnections.remove(userId);
+        if (connections != null) {
+            connections.values().forEach(SSEConnection::complete);
+            log.info("User {} disconnected from SSE stream ({} connections)", userId, connections.size());
+            notifyConnectionListeners(userId, false);
         }
     }
 }
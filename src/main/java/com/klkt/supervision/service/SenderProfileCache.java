@@ -0,0 +1,82 @@
+package com.klkt.supervision.service;
+
+import com.klkt.supervision.dto.SenderProfile;
+import com.klkt.supervision.repository.UserRepository;
+import com.klkt.supervision.util.ExpiringCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded, expiring cache of sender display names and avatars used to build message responses
+ */
+@Slf4j
+@Service
+public class SenderProfileCache {
+
+    private final UserRepository userRepository;
+    private final ExpiringCache<Long, SenderProfile> cache;
+    private final Duration ttl;
+
+    public SenderProfileCache(UserRepository userRepository,
+                              @Value("${cache.sender-profile.max-size:10000}") int maxSize,
+                              @Value("${cache.sender-profile.ttl:300000}") long ttlMillis) {
+        this.userRepository = userRepository;
+        this.cache = new ExpiringCache<>(maxSize);
+        this.ttl = Duration.ofMillis(ttlMillis);
+    }
+
+    public Mono<SenderProfile> get(Long userId) {
+        SenderProfile cached = cache.get(userId);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        return userRepository.findSenderProfileById(userId)
+                .doOnNext(profile -> cache.put(userId, profile, ttl));
+    }
+
+    /**
+     * Resolve several senders at once, loading all misses with a single query
+     */
+    public Mono<Map<Long, SenderProfile>> getAll(Collection<Long> userIds) {
+        Map<Long, SenderProfile> profiles = new HashMap<>();
+        Set<Long> missing = new LinkedHashSet<>();
+        for (Long userId : userIds) {
+            SenderProfile cached = cache.get(userId);
+            if (cached != null) {
+                profiles.put(userId, cached);
+            } else {
+                missing.add(userId);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return Mono.just(profiles);
+        }
+        return userRepository.findSenderProfilesByIdIn(missing)
+                .doOnNext(profile -> {
+                    cache.put(profile.getId(), profile, ttl);
+                    profiles.put(profile.getId(), profile);
+                })
+                .then(Mono.fromSupplier(() -> profiles));
+    }
+
+    /**
+     * Put a freshly loaded profile, e.g. returned together with a written row
+     */
+    public void put(SenderProfile profile) {
+        cache.put(profile.getId(), profile, ttl);
+    }
+
+    public void invalidate(Long userId) {
+        cache.invalidate(userId);
+    }
+}
@@ -0,0 +1,262 @@
+package com.klkt.supervision.service;
+
+import com.klkt.supervision.config.WorkerPoolProperties;
+import com.klkt.supervision.dto.AttachmentResponse;
+import com.klkt.supervision.dto.ImageRenditions;
+import com.klkt.supervision.dto.MessageResponse;
+import com.klkt.supervision.entity.Message;
+import com.klkt.supervision.entity.MessageAttachment;
+import com.klkt.supervision.repository.MessageAttachmentRepository;
+import com.klkt.supervision.repository.MessageRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background thumbnail pipeline. Uploads return right away with a PENDING thumbnail; images are queued here,
+ * rendered on the image worker pool, stored in thumbnail_url / preview_url and announced with an
+ * attachment_updated SSE event. The queue lives in memory and is bounded: an image that does not fit stays
+ * PENDING. One node (the presence leader) pages through images pending for longer than thumbnails.resume-after,
+ * which covers both overflow and queues lost with a stopped instance, and queues as many as there is room for.
+ */
+@Slf4j
+@Service
+public class ThumbnailService {
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_READY = "READY";
+
+    private static final int RESUME_PAGE_SIZE = 200;
+
+    private final FileStorageService fileStorageService;
+    private final MessageAttachmentRepository attachmentRepository;
+    private final MessageRepository messageRepository;
+    private final SSEService sseService;
+    private final PresenceService presenceService;
+    private final int concurrency;
+    private final int queueSize;
+    private final Duration resumeInterval;
+    private final Duration resumeAfter;
+    private final Sinks.Many<ThumbnailTask> queue;
+
+    // Attachments in the queue or being rendered, so the resume does not queue them twice
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+
+    // Last attachment ID queued by the resume; the next run continues after it, 0 starts a new pass
+    private volatile long resumeAfterId;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+    private final AtomicLong resumed = new AtomicLong();
+
+    private Disposable worker;
+    private Disposable resumer;
+
+    public ThumbnailService(FileStorageService fileStorageService,
+                            MessageAttachmentRepository attachmentRepository,
+                            MessageRepository messageRepository,
+                            SSEService sseService,
+                            PresenceService presenceService,
+                            WorkerPoolProperties workerPoolProperties,
+                            @Value("${thumbnails.queue-size:1000}") int queueSize,
+                            @Value("${thumbnails.resume-interval:60000}") long resumeIntervalMillis,
+                            @Value("${thumbnails.resume-after:300000}") long resumeAfterMillis) {
+        this.fileStorageService = fileStorageService;
+        this.attachmentRepository = attachmentRepository;
+        this.messageRepository = messageRepository;
+        this.sseService = sseService;
+        this.presenceService = presenceService;
+        this.concurrency = workerPoolProperties.getImage().getThreads();
+        this.queueSize = queueSize;
+        this.resumeInterval = Duration.ofMillis(resumeIntervalMillis);
+        this.resumeAfter = Duration.ofMillis(resumeAfterMillis);
+        this.queue = Sinks.many().unicast().onBackpressureBuffer(Queues.<ThumbnailTask>get(queueSize).get());
+    }
+
+    @PostConstruct
+    public void start() {
+        // At most one task per image worker thread in flight, the rest waits in the queue
+        worker = queue.asFlux()
+                .flatMap(this::process, concurrency)
+                .subscribe();
+
+        resumer = Flux.interval(resumeInterval, resumeInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> resumePending(), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (resumer != null) {
+            resumer.dispose();
+        }
+        if (worker != null) {
+            worker.dispose();
+        }
+    }
+
+    /**
+     * Queue the pending thumbnails of a freshly sent message
+     */
+    public void schedule(MessageResponse message) {
+        if (message.getAttachments() == null) {
+            return;
+        }
+
+        for (AttachmentResponse attachment : message.getAttachments()) {
+            if (!STATUS_PENDING.equals(attachment.getThumbnailStatus())) {
+                continue;
+            }
+
+            enqueue(new ThumbnailTask(message.getGroupId(), message.getId(), attachment.getId()));
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pending", pending.get());
+        stats.put("generated", generated.get());
+        stats.put("failed", failed.get());
+        stats.put("overflowed", overflowed.get());
+        stats.put("resumed", resumed.get());
+        return stats;
+    }
+
+    /**
+     * Queue one page of long pending thumbnails, no more than the queue has room for; the next run continues
+     * with the next page. Runs on the presence leader only, so the nodes do not render the same images.
+     */
+    private Mono<Void> resumePending() {
+        int room = Math.min(queueSize - pending.get(), RESUME_PAGE_SIZE);
+        if (room <= 0 || !presenceService.isLeader()) {
+            return Mono.empty();
+        }
+
+        long afterId = resumeAfterId;
+        return attachmentRepository.findPendingThumbnails(afterId, LocalDateTime.now().minus(resumeAfter), room)
+                .collectList()
+                .flatMap(attachments -> {
+                    // A short page ends the pass, the next run starts over from the first pending image
+                    resumeAfterId = attachments.size() < room ? 0 : attachments.get(attachments.size() - 1).getId();
+                    if (attachments.isEmpty()) {
+                        return Mono.empty();
+                    }
+                    return messageRepository.findAllById(attachments.stream()
+                                    .map(MessageAttachment::getMessageId)
+                                    .collect(Collectors.toSet()))
+                            .collectMap(Message::getId, Message::getGroupId)
+                            .doOnNext(groupIds -> resume(attachments, groupIds));
+                })
+                .onErrorResume(e -> {
+                    log.error("Failed to resume pending thumbnails", e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private void resume(List<MessageAttachment> attachments, Map<Long, Long> groupIds) {
+        int count = 0;
+        for (MessageAttachment attachment : attachments) {
+            Long groupId = groupIds.get(attachment.getMessageId());
+            if (groupId != null && !queued.contains(attachment.getId())
+                    && enqueue(new ThumbnailTask(groupId, attachment.getMessageId(), attachment.getId()))) {
+                count++;
+            }
+        }
+        if (count > 0) {
+            resumed.addAndGet(count);
+            log.info("Resumed {} pending thumbnails", count);
+        }
+    }
+
+    private boolean enqueue(ThumbnailTask task) {
+        // Counted before the emit: the worker may pick the task up and finish it right away
+        pending.incrementAndGet();
+        queued.add(task.attachmentId());
+        Sinks.EmitResult result;
+        synchronized (queue) {
+            result = queue.tryEmitNext(task);
+        }
+
+        if (result.isSuccess()) {
+            return true;
+        }
+        pending.decrementAndGet();
+        queued.remove(task.attachmentId());
+        // Queue full: the thumbnail stays PENDING and is queued again by the resume
+        log.warn("Thumbnail queue full, attachment {} stays pending", task.attachmentId());
+        overflowed.incrementAndGet();
+        return false;
+    }
+
+    private Mono<Void> process(ThumbnailTask task) {
+        return attachmentRepository.findById(task.attachmentId())
+                .flatMap(attachment -> fileStorageService.generateRenditions(attachment.getStoragePath())
+                        .doOnNext(renditions -> generated.incrementAndGet())
+                        .onErrorResume(e -> {
+                            log.warn("Failed to generate thumbnail for attachment {}: {}",
+                                    task.attachmentId(), e.getMessage());
+                            failed.incrementAndGet();
+                            // Fallback to original image
+                            return Mono.just(originalAsRenditions(attachment.getFileUrl()));
+                        }))
+                .flatMap(renditions -> complete(task, renditions))
+                .onErrorResume(e -> {
+                    log.error("Thumbnail pipeline failed for attachment {}", task.attachmentId(), e);
+                    return Mono.empty();
+                })
+                .doFinally(signal -> {
+                    queued.remove(task.attachmentId());
+                    pending.decrementAndGet();
+                });
+    }
+
+    /**
+     * Store the rendition URLs and let the group members swap the placeholder
+     */
+    private Mono<Void> complete(ThumbnailTask task, ImageRenditions renditions) {
+        return attachmentRepository.updateRenditions(task.attachmentId(),
+                        renditions.getThumbnailUrl(), renditions.getPreviewUrl())
+                .then(attachmentRepository.findById(task.attachmentId()))
+                .doOnNext(attachment -> {
+                    Map<String, Object> data = new LinkedHashMap<>();
+                    data.put("groupId", task.groupId());
+                    data.put("messageId", task.messageId());
+                    data.put("attachment", MessageService.toAttachmentResponse(attachment));
+
+                    sseService.sendToGroup(task.groupId(), "attachment_updated", data);
+                })
+                .then();
+    }
+
+    private ImageRenditions originalAsRenditions(String fileUrl) {
+        return ImageRenditions.builder()
+                .thumbnailUrl(fileUrl)
+                .previewUrl(fileUrl)
+                .build();
+    }
+
+    private record ThumbnailTask(Long groupId, Long messageId, Long attachmentId) {
+    }
+}
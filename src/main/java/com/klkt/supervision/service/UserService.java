@@ -5,7 +5,6 @@ import com.klkt.supervision.entity.User;
 import com.klkt.supervision.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -18,8 +17,11 @@ import java.time.LocalDateTime;
 public class UserService {
     
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
     private final JwtService jwtService;
+    private final GroupMembershipIndex membershipIndex;
+    private final SenderProfileCache senderProfileCache;
+    private final PresenceService presenceService;
     
     public Mono<UserResponse> createUser(CreateUserRequest request) {
         return userRepository.existsByUsername(request.getUsername())
@@ -39,19 +41,25 @@ public class UserService {
                         }
                     }
                     
-                    User user = User.builder()
-                            .username(request.getUsername())
-                            .password(passwordEncoder.encode(request.getPassword()))
-                            .passwordPlain(request.getPassword())
-                            .displayName(request.getDisplayName())
-                            .avatarUrl(request.getAvatarUrl())
-                            .role(userRole)
-                            .status(User.UserStatus.ONLINE)
-                            .createdAt(LocalDateTime.now())
-                            .updatedAt(LocalDateTime.now())
-                            .build();
-                    
-                    return userRepository.save(user)
+                    User.UserRole role = userRole;
+                    return passwordHashingService.encode(request.getPassword())
+                            .map(passwordHash -> User.builder()
+                                    .username(request.getUsername())
+                                    .password(passwordHash)
+                                    .passwordPlain(request.getPassword())
+                                    .displayName(request.getDisplayName())
+                                    .avatarUrl(request.getAvatarUrl())
+                                    .role(role)
+                                    .status(User.UserStatus.ONLINE)
+                                    .createdAt(LocalDateTime.now())
+                                    .updatedAt(LocalDateTime.now())
+                                    .build())
+                            .flatMap(this::saveUser)
+                            .doOnSuccess(saved -> {
+                                if (saved.getRole() == User.UserRole.ADMIN) {
+                                    membershipIndex.addAdmin(saved.getId());
+                                }
+                            })
                             .map(this::toUserResponse)
                             .doOnSuccess(u -> log.info("Created user: {}", u.getUsername()));
                 });
@@ -75,59 +83,55 @@ public class UserService {
     }
     
     public Mono<UserResponse> updateUserStatus(Long userId, User.UserStatus status) {
+        // Written to the users table by the presence service in its next batch
         return userRepository.findById(userId)
-                .flatMap(user -> {
-                    user.setStatus(status);
-                    user.setUpdatedAt(LocalDateTime.now());
-                    return userRepository.save(user);
+                .map(user -> {
+                    presenceService.setStatus(userId, status);
+                    return toUserResponse(user);
                 })
-                .map(this::toUserResponse)
                 .doOnSuccess(u -> log.info("Updated user {} status to {}", userId, status));
     }
     
     public Mono<LoginResponse> login(LoginRequest request) {
         return userRepository.findByUsername(request.getUsername())
                 .switchIfEmpty(Mono.error(new RuntimeException("Invalid username or password")))
-                .flatMap(user -> {
-                    if (passwordEncoder.matches(request.getPassword(), user.getPassword())) {
-                        // Update status to ONLINE
-                        user.setStatus(User.UserStatus.ONLINE);
-                        user.setUpdatedAt(LocalDateTime.now());
-                        return userRepository.save(user)
-                                .map(savedUser -> {
-                                    // Generate JWT token
-                                    String token = jwtService.generateToken(
-                                            savedUser.getId(),
-                                            savedUser.getUsername(),
-                                            savedUser.getRole() != null ? savedUser.getRole().name() : "MEMBER"
-                                    );
+                .flatMap(user -> passwordHashingService.matches(request.getPassword(), user.getPassword())
+                        .flatMap(passwordMatches -> {
+                            if (passwordMatches) {
+                                // ONLINE until the grace period ends unless an SSE connection opens,
+                                // the row is written in the presence service's next batch
+                                presenceService.loggedIn(user.getId());
+                                user.setStatus(User.UserStatus.ONLINE);
+                                return Mono.just(user)
+                                        .map(savedUser -> {
+                                            // Generate JWT token
+                                            String token = jwtService.generateToken(
+                                                    savedUser.getId(),
+                                                    savedUser.getUsername(),
+                                                    savedUser.getRole() != null ? savedUser.getRole().name() : "MEMBER"
+                                            );
                                     
-                                    // Build LoginResponse with token
-                                    return LoginResponse.builder()
-                                            .token(token)
-                                            .id(savedUser.getId())
-                                            .username(savedUser.getUsername())
-                                            .displayName(savedUser.getDisplayName())
-                                            .avatarUrl(savedUser.getAvatarUrl())
-                                            .role(savedUser.getRole() != null ? savedUser.getRole().name() : "MEMBER")
-                                            .status(savedUser.getStatus().name())
-                                            .createdAt(savedUser.getCreatedAt())
-                                            .build();
-                                })
-                                .doOnSuccess(response -> log.info("User {} logged in successfully with JWT token", response.getUsername()));
-                    } else {
-                        return Mono.error(new RuntimeException("Invalid username or password"));
-                    }
-                });
+                                            // Build LoginResponse with token
+                                            return LoginResponse.builder()
+                                                    .token(token)
+                                                    .id(savedUser.getId())
+                                                    .username(savedUser.getUsername())
+                                                    .displayName(savedUser.getDisplayName())
+                                                    .avatarUrl(savedUser.getAvatarUrl())
+                                                    .role(savedUser.getRole() != null ? savedUser.getRole().name() : "MEMBER")
+                                                    .status(savedUser.getStatus().name())
+                                                    .createdAt(savedUser.getCreatedAt())
+                                                    .build();
+                                        })
+                                        .doOnSuccess(response -> log.info("User {} logged in successfully with JWT token", response.getUsername()));
+                            } else {
+                                return Mono.error(new RuntimeException("Invalid username or password"));
+                            }
+                        }));
     }
     
     public Mono<Void> logout(Long userId) {
-        return userRepository.findById(userId)
-                .flatMap(user -> {
-                    user.setStatus(User.UserStatus.OFFLINE);
-                    user.setUpdatedAt(LocalDateTime.now());
-                    return userRepository.save(user);
-                })
+        return Mono.fromRunnable(() -> presenceService.loggedOut(userId))
                 .then()
                 .doOnSuccess(v -> log.info("User {} logged out", userId));
     }
@@ -135,24 +139,39 @@ public class UserService {
     public Mono<Void> resetPassword(ResetPasswordRequest request) {
         return userRepository.findByUsername(request.getUsername())
                 .switchIfEmpty(Mono.error(new RuntimeException("User not found")))
-                .flatMap(user -> {
-                    user.setPassword(passwordEncoder.encode(request.getNewPassword()));
-                    user.setPasswordPlain(request.getNewPassword());
-                    user.setUpdatedAt(LocalDateTime.now());
-                    return userRepository.save(user);
-                })
+                .flatMap(user -> passwordHashingService.encode(request.getNewPassword())
+                        .flatMap(passwordHash -> {
+                            user.setPassword(passwordHash);
+                            user.setPasswordPlain(request.getNewPassword());
+                            user.setUpdatedAt(LocalDateTime.now());
+                            return saveUser(user);
+                        }))
                 .then()
                 .doOnSuccess(v -> log.info("Password reset for user: {}", request.getUsername()));
     }
     
+    /**
+     * Save a user row and drop its cached sender profile
+     */
+    private Mono<User> saveUser(User user) {
+        return userRepository.save(user)
+                .doOnSuccess(saved -> senderProfileCache.invalidate(saved.getId()));
+    }
+    
     private UserResponse toUserResponse(User user) {
+        // Live presence is ahead of the stored status by up to one flush interval
+        User.UserStatus status = presenceService.getStatus(user.getId());
+        if (status == null) {
+            status = user.getStatus();
+        }
+        
         return UserResponse.builder()
                 .id(user.getId())
                 .username(user.getUsername())
                 .displayName(user.getDisplayName())
                 .avatarUrl(user.getAvatarUrl())
                 .role(user.getRole() != null ? user.getRole().name() : "MEMBER")
-                .status(user.getStatus().name())
+                .status(status.name())
                 .createdAt(user.getCreatedAt())
                 .build();
     }
@@ -0,0 +1,128 @@
+package com.klkt.supervision.util;
+
+import com.klkt.supervision.exception.ServiceBusyException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool for blocking work (file IO, MinIO calls, image decoding) kept off the Netty event loop.
+ * At most threads tasks run at once and at most queueSize wait in total across the threads;
+ * further tasks fail with ServiceBusyException.
+ */
+public class BoundedWorkerPool {
+    
+    private final String name;
+    private final int threads;
+    private final int queueSize;
+    private final Scheduler scheduler;
+    
+    // Tasks running or waiting, at most threads + queueSize. The scheduler's own queue cap is per thread.
+    private final AtomicInteger inFlight = new AtomicInteger();
+    
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong active = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+    private final AtomicLong totalRunMillis = new AtomicLong();
+    
+    public BoundedWorkerPool(String name, int threads, int queueSize) {
+        this.name = name;
+        this.threads = threads;
+        this.queueSize = queueSize;
+        this.scheduler = Schedulers.newBoundedElastic(threads, queueSize, name);
+    }
+    
+    /**
+     * Run a blocking task on the pool. An empty Mono is returned when the task returns null.
+     */
+    public <T> Mono<T> submit(Callable<T> task) {
+        return Mono.defer(() -> {
+            if (inFlight.incrementAndGet() > threads + queueSize) {
+                inFlight.decrementAndGet();
+                rejected.incrementAndGet();
+                return Mono.error(busy());
+            }
+            
+            AtomicBoolean dequeued = new AtomicBoolean();
+            long submittedAt = System.currentTimeMillis();
+            queued.incrementAndGet();
+            
+            return Mono.fromCallable(() -> {
+                        if (!dequeued.compareAndSet(false, true)) {
+                            // Cancelled while waiting, the slot is already released
+                            return null;
+                        }
+                        queued.decrementAndGet();
+                        long startedAt = System.currentTimeMillis();
+                        totalWaitMillis.addAndGet(startedAt - submittedAt);
+                        active.incrementAndGet();
+                        try {
+                            T result = task.call();
+                            completed.incrementAndGet();
+                            return result;
+                        } catch (Exception e) {
+                            failed.incrementAndGet();
+                            throw e;
+                        } finally {
+                            active.decrementAndGet();
+                            inFlight.decrementAndGet();
+                            totalRunMillis.addAndGet(System.currentTimeMillis() - startedAt);
+                        }
+                    })
+                    .subscribeOn(scheduler)
+                    .onErrorMap(RejectedExecutionException.class, e -> {
+                        rejected.incrementAndGet();
+                        return busy();
+                    })
+                    .doFinally(signal -> {
+                        // Task rejected or cancelled before it started
+                        if (dequeued.compareAndSet(false, true)) {
+                            queued.decrementAndGet();
+                            inFlight.decrementAndGet();
+                        }
+                    });
+        });
+    }
+    
+    private ServiceBusyException busy() {
+        return new ServiceBusyException("Server is busy (" + name + " pool saturated), please retry");
+    }
+    
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public Map<String, Object> getStats() {
+        long finished = completed.get() + failed.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("threads", threads);
+        stats.put("queueSize", queueSize);
+        stats.put("active", active.get());
+        stats.put("queued", queued.get());
+        stats.put("completed", completed.get());
+        stats.put("failed", failed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("avgWaitMillis", finished > 0 ? totalWaitMillis.get() / finished : 0);
+        stats.put("avgRunMillis", finished > 0 ? totalRunMillis.get() / finished : 0);
+        return stats;
+    }
+    
+    public void dispose() {
+        scheduler.dispose();
+    }
+}
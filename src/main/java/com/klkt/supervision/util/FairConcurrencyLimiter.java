@@ -0,0 +1,156 @@
+package com.klkt.supervision.util;
+
+import com.klkt.supervision.exception.ServiceBusyException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits how many tasks run at once across all callers. Waiting tasks are queued per key (e.g. user)
+ * and permits are handed out round-robin over the keys, so one caller with many tasks cannot starve others.
+ * At most queueSize tasks wait; further tasks fail with ServiceBusyException.
+ */
+public class FairConcurrencyLimiter {
+
+    private final String name;
+    private final int permits;
+    private final int queueSize;
+
+    // Guarded by this. Key order is the round-robin order: a served key moves to the end
+    private final LinkedHashMap<Object, ArrayDeque<Waiter>> waiting = new LinkedHashMap<>();
+    private int available;
+    private int queued;
+
+    private final AtomicLong granted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+
+    public FairConcurrencyLimiter(String name, int permits, int queueSize) {
+        this.name = name;
+        this.permits = permits;
+        this.queueSize = queueSize;
+        this.available = permits;
+    }
+
+    /**
+     * Subscribe to the task once a permit is free for this key; the permit is returned when it terminates
+     */
+    public <T> Mono<T> run(Object key, Mono<T> task) {
+        return Mono.defer(() -> {
+            Waiter waiter = new Waiter(key);
+            return acquire(waiter)
+                    .then(task)
+                    .doFinally(signal -> finish(waiter));
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Map<String, Object> getStats() {
+        int active;
+        int waitingTasks;
+        int waitingKeys;
+        synchronized (this) {
+            active = permits - available;
+            waitingTasks = queued;
+            waitingKeys = waiting.size();
+        }
+        long grants = granted.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("permits", permits);
+        stats.put("queueSize", queueSize);
+        stats.put("active", active);
+        stats.put("queued", waitingTasks);
+        stats.put("queuedKeys", waitingKeys);
+        stats.put("granted", grants);
+        stats.put("rejected", rejected.get());
+        stats.put("avgWaitMillis", grants > 0 ? totalWaitMillis.get() / grants : 0);
+        stats.put("maxWaitMillis", maxWaitMillis.get());
+        return stats;
+    }
+
+    private Mono<Void> acquire(Waiter waiter) {
+        synchronized (this) {
+            if (available > 0 && queued == 0) {
+                available--;
+                grant(waiter);
+                return Mono.empty();
+            }
+            if (queued >= queueSize) {
+                rejected.incrementAndGet();
+                return Mono.error(new ServiceBusyException("Server is busy (" + name + " queue full), please retry"));
+            }
+            waiting.computeIfAbsent(waiter.key, key -> new ArrayDeque<>()).add(waiter);
+            queued++;
+        }
+        return waiter.permit.asMono();
+    }
+
+    /**
+     * Task terminated or cancelled: return its permit, or leave the queue if it never got one
+     */
+    private void finish(Waiter waiter) {
+        Waiter next;
+        synchronized (this) {
+            if (!waiter.granted) {
+                ArrayDeque<Waiter> queue = waiting.get(waiter.key);
+                if (queue != null && queue.remove(waiter)) {
+                    queued--;
+                    if (queue.isEmpty()) {
+                        waiting.remove(waiter.key);
+                    }
+                }
+                return;
+            }
+            next = pollNext();
+            if (next == null) {
+                available++;
+                return;
+            }
+            grant(next);
+        }
+        next.permit.tryEmitEmpty();
+    }
+
+    private Waiter pollNext() {
+        Iterator<Map.Entry<Object, ArrayDeque<Waiter>>> entries = waiting.entrySet().iterator();
+        if (!entries.hasNext()) {
+            return null;
+        }
+        Map.Entry<Object, ArrayDeque<Waiter>> first = entries.next();
+        entries.remove();
+        Waiter next = first.getValue().poll();
+        if (!first.getValue().isEmpty()) {
+            waiting.put(first.getKey(), first.getValue());
+        }
+        queued--;
+        return next;
+    }
+
+    private void grant(Waiter waiter) {
+        waiter.granted = true;
+        long waitMillis = System.currentTimeMillis() - waiter.enqueuedAt;
+        granted.incrementAndGet();
+        totalWaitMillis.addAndGet(waitMillis);
+        maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+    }
+
+    private static class Waiter {
+        private final Object key;
+        private final long enqueuedAt = System.currentTimeMillis();
+        private final Sinks.Empty<Void> permit = Sinks.empty();
+        private boolean granted;
+
+        private Waiter(Object key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.klkt.supervision.util;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JPEG renditions of images. The source is decoded with ImageIO source subsampling,
+ * so a large photo is never decoded at full resolution to produce small previews.
+ */
+public class ImageResizer {
+
+    private static final float JPEG_QUALITY = 0.8f;
+    private static final float PLACEHOLDER_QUALITY = 0.5f;
+
+    private ImageResizer() {
+    }
+
+    /**
+     * Decode the image once and render one JPEG per requested max size (longest side, never upscaled)
+     */
+    public static Map<Integer, byte[]> renderJpegs(ImageInputStream input, int... maxSizes) throws IOException {
+        int largest = Arrays.stream(maxSizes).max().orElseThrow();
+        BufferedImage decoded = decodeSubsampled(input, largest);
+
+        Map<Integer, byte[]> renditions = new LinkedHashMap<>();
+        for (int maxSize : maxSizes) {
+            renditions.put(maxSize, encodeJpeg(scale(decoded, maxSize), JPEG_QUALITY));
+        }
+        return renditions;
+    }
+
+    /**
+     * Tiny JPEG of the image as a data URI, small enough to be sent inline with the message
+     */
+    public static String renderPlaceholder(ImageInputStream input, int maxSize) throws IOException {
+        BufferedImage decoded = decodeSubsampled(input, maxSize);
+        byte[] jpeg = encodeJpeg(scale(decoded, maxSize), PLACEHOLDER_QUALITY);
+        return "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(jpeg);
+    }
+    
+    /**
+     * Read the dimensions from the header, then decode every n-th pixel so that
+     * the longest side is between maxSize and 2 * maxSize
+     */
+    private static BufferedImage decodeSubsampled(ImageInputStream input, int maxSize) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format");
+        }
+
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(input, true, true);
+            int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+            int subsampling = Math.max(1, longest / maxSize);
+
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            return reader.read(0, param);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private static BufferedImage scale(BufferedImage source, int maxSize) {
+        double scale = Math.min(1.0, (double) maxSize / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        // JPEG has no alpha channel: transparent areas become white instead of black
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+        g.drawImage(source, 0, 0, width, height, null);
+        g.dispose();
+        return target;
+    }
+
+    private static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+
+            writer.setOutput(imageOutput);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,278 @@
+package com.klkt.supervision.util;
+
+import com.klkt.supervision.dto.MediaMetadata;
+import org.springframework.core.io.buffer.DataBuffer;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Reads width, height and duration of an upload from the bytes passing by on their way to storage.
+ * Only headers are looked at, pixels and frames are never decoded.
+ * Buffers are read through read-only views, the upload itself is not affected.
+ */
+public interface MediaMetadataProbe {
+
+    void accept(DataBuffer buffer);
+
+    /**
+     * Call once the whole content went through accept
+     */
+    MediaMetadata result();
+
+    static MediaMetadataProbe forFileName(String fileName) {
+        String name = fileName.toLowerCase();
+        if (name.matches(".*\\.(jpg|jpeg|png|gif|webp|bmp)$")) {
+            return new ImageHeaderProbe();
+        }
+        if (name.matches(".*\\.(mp4|m4v|mov)$")) {
+            return new Mp4BoxProbe();
+        }
+        return new NoMetadataProbe();
+    }
+}
+
+class NoMetadataProbe implements MediaMetadataProbe {
+
+    @Override
+    public void accept(DataBuffer buffer) {
+    }
+
+    @Override
+    public MediaMetadata result() {
+        return new MediaMetadata();
+    }
+}
+
+/**
+ * Keeps the first bytes of an image and asks the matching ImageIO reader for the dimensions,
+ * which it takes from the header (JPEG SOF, PNG IHDR, ...)
+ */
+class ImageHeaderProbe implements MediaMetadataProbe {
+
+    // Room for EXIF and ICC segments in front of the JPEG frame header
+    private static final int HEADER_LIMIT = 256 * 1024;
+
+    private final ByteArrayOutputStream header = new ByteArrayOutputStream();
+
+    @Override
+    public void accept(DataBuffer buffer) {
+        if (header.size() >= HEADER_LIMIT) {
+            return;
+        }
+        try (DataBuffer.ByteBufferIterator buffers = buffer.readableByteBuffers()) {
+            while (buffers.hasNext() && header.size() < HEADER_LIMIT) {
+                ByteBuffer bytes = buffers.next();
+                byte[] chunk = new byte[Math.min(bytes.remaining(), HEADER_LIMIT - header.size())];
+                bytes.get(chunk);
+                header.writeBytes(chunk);
+            }
+        }
+    }
+
+    @Override
+    public MediaMetadata result() {
+        try (ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(header.toByteArray()))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return new MediaMetadata();
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return MediaMetadata.builder()
+                        .width(reader.getWidth(0))
+                        .height(reader.getHeight(0))
+                        .build();
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Header beyond HEADER_LIMIT or not an image after all
+            return new MediaMetadata();
+        }
+    }
+}
+
+/**
+ * Streaming walk over the ISO BMFF boxes of MP4/MOV files. Box payloads are skipped by counting bytes,
+ * only moov and trak are descended into and only the start of mvhd (duration) and tkhd (display size)
+ * is kept. Works whether moov comes before mdat (fast start) or after it.
+ */
+class Mp4BoxProbe implements MediaMetadataProbe {
+
+    private static final int KEPT_PAYLOAD = 128;
+
+    private final byte[] header = new byte[16];
+    private int headerLength;
+    private int headerNeeded = 8;
+
+    private long position;
+    private long skipRemaining;
+    private byte[] payload;
+    private int payloadLength;
+    private String payloadType;
+    private long payloadRest;
+
+    private final Deque<Long> containerEnds = new ArrayDeque<>();
+    private long moovEnd = -1;
+    private boolean done;
+
+    private Integer width;
+    private Integer height;
+    private Integer duration;
+
+    @Override
+    public void accept(DataBuffer buffer) {
+        if (done) {
+            return;
+        }
+        try (DataBuffer.ByteBufferIterator buffers = buffer.readableByteBuffers()) {
+            while (buffers.hasNext() && !done) {
+                consume(buffers.next());
+            }
+        }
+    }
+
+    @Override
+    public MediaMetadata result() {
+        return MediaMetadata.builder()
+                .width(width)
+                .height(height)
+                .duration(duration)
+                .build();
+    }
+
+    private void consume(ByteBuffer bytes) {
+        while (bytes.hasRemaining() && !done) {
+            if (skipRemaining > 0) {
+                int skipped = (int) Math.min(skipRemaining, bytes.remaining());
+                bytes.position(bytes.position() + skipped);
+                position += skipped;
+                skipRemaining -= skipped;
+                if (skipRemaining == 0) {
+                    boxEnded();
+                }
+            } else if (payload != null) {
+                int read = Math.min(payload.length - payloadLength, bytes.remaining());
+                bytes.get(payload, payloadLength, read);
+                payloadLength += read;
+                position += read;
+                if (payloadLength == payload.length) {
+                    parsePayload(payloadType, payload);
+                    payload = null;
+                    skipRemaining = payloadRest;
+                    if (skipRemaining == 0) {
+                        boxEnded();
+                    }
+                }
+            } else {
+                header[headerLength++] = bytes.get();
+                position++;
+                if (headerLength == headerNeeded) {
+                    boxHeaderRead();
+                }
+            }
+        }
+    }
+
+    private void boxHeaderRead() {
+        ByteBuffer view = ByteBuffer.wrap(header);
+        long size = Integer.toUnsignedLong(view.getInt(0));
+        if (size == 1 && headerNeeded == 8) {
+            // 64-bit size follows the type
+            headerNeeded = 16;
+            return;
+        }
+        if (size == 1) {
+            size = view.getLong(8);
+        }
+
+        int headerSize = headerNeeded;
+        String type = new String(header, 4, 4, StandardCharsets.ISO_8859_1);
+        headerLength = 0;
+        headerNeeded = 8;
+
+        // size 0 (box runs to the end of the file) or a broken size: nothing more to learn
+        if (size < headerSize) {
+            done = true;
+            return;
+        }
+
+        long end = position - headerSize + size;
+        long payloadSize = size - headerSize;
+        switch (type) {
+            case "moov", "trak" -> {
+                if ("moov".equals(type)) {
+                    moovEnd = end;
+                }
+                containerEnds.push(end);
+                if (payloadSize == 0) {
+                    boxEnded();
+                }
+            }
+            case "mvhd", "tkhd" -> {
+                payload = new byte[(int) Math.min(payloadSize, KEPT_PAYLOAD)];
+                payloadLength = 0;
+                payloadType = type;
+                payloadRest = payloadSize - payload.length;
+                if (payload.length == 0) {
+                    payload = null;
+                    boxEnded();
+                }
+            }
+            default -> {
+                skipRemaining = payloadSize;
+                if (payloadSize == 0) {
+                    boxEnded();
+                }
+            }
+        }
+    }
+
+    private void boxEnded() {
+        while (!containerEnds.isEmpty() && position >= containerEnds.peek()) {
+            containerEnds.pop();
+        }
+        if (moovEnd >= 0 && position >= moovEnd) {
+            done = true;
+        }
+    }
+
+    private void parsePayload(String type, byte[] data) {
+        ByteBuffer view = ByteBuffer.wrap(data);
+        int version = data.length > 0 ? data[0] : 0;
+
+        if ("mvhd".equals(type) && data.length >= 32) {
+            long timescale = Integer.toUnsignedLong(view.getInt(version == 1 ? 20 : 12));
+            long units = version == 1 ? view.getLong(24) : Integer.toUnsignedLong(view.getInt(16));
+            if (timescale > 0 && units > 0) {
+                duration = (int) Math.min(Integer.MAX_VALUE, units * 1000 / timescale);
+            }
+        }
+
+        int matrix = version == 1 ? 52 : 40;
+        if ("tkhd".equals(type) && width == null && data.length >= matrix + 44) {
+            // 16.16 fixed point, audio tracks have no size
+            int trackWidth = view.getInt(matrix + 36) >>> 16;
+            int trackHeight = view.getInt(matrix + 40) >>> 16;
+            if (trackWidth > 0 && trackHeight > 0) {
+                // Matrix of a 90 or 270 degree rotation (phone videos shot in portrait)
+                boolean rotated = view.getInt(matrix) == 0 && view.getInt(matrix + 16) == 0;
+                width = rotated ? trackHeight : trackWidth;
+                height = rotated ? trackWidth : trackHeight;
+            }
+        }
+    }
+}
@@ -0,0 +1,5 @@
+-- Migration script to add the inline placeholder column to message attachments
+-- Run this script if you have existing data in your database
+
+-- ~20px JPEG of image attachments as a data URI, shown until the thumbnail is loaded
+ALTER TABLE message_attachments ADD COLUMN IF NOT EXISTS placeholder TEXT;
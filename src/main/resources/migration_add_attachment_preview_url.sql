@@ -0,0 +1,5 @@
+-- Migration script to add the preview rendition column to message attachments
+-- Run this script if you have existing data in your database
+
+-- 800px JPEG rendition of image attachments (thumbnail_url holds the 200px one)
+ALTER TABLE message_attachments ADD COLUMN IF NOT EXISTS preview_url VARCHAR(500);
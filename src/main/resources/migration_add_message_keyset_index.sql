@@ -0,0 +1,6 @@
+-- Migration script to add the keyset pagination index for group message history
+-- Run this script if you have existing data in your database
+
+-- Serves /api/messages/group/{groupId} with before/after cursors on (created_at, id)
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_messages_group_created_id
+    ON messages (group_id, created_at DESC, id DESC);
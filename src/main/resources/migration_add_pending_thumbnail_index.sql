@@ -0,0 +1,7 @@
+-- Migration script to add the index of attachments waiting for a thumbnail
+-- Run this script if you have existing data in your database
+
+-- Serves the thumbnail resume (ThumbnailService), paging through pending images by id
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_message_attachments_pending_thumbnail
+    ON message_attachments (id)
+    WHERE thumbnail_url IS NULL AND file_type LIKE 'image/%';
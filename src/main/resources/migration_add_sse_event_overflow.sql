@@ -0,0 +1,10 @@
+-- Migration script to add the table holding SSE envelopes too large for a NOTIFY payload (sse.event-bus=postgres)
+-- Run this script if you have existing data in your database
+
+CREATE TABLE IF NOT EXISTS sse_event_overflow (
+    id BIGSERIAL PRIMARY KEY,
+    payload TEXT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_sse_event_overflow_created_at ON sse_event_overflow(created_at);
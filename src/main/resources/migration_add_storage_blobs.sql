@@ -0,0 +1,13 @@
+-- Migration script to add the reference table of the content-addressed storage mode (storage.dedup.enabled)
+-- Run this script if you have existing data in your database
+
+CREATE TABLE IF NOT EXISTS storage_blobs (
+    id BIGSERIAL PRIMARY KEY,
+    hash VARCHAR(64) NOT NULL UNIQUE,
+    storage_path VARCHAR(500) NOT NULL,
+    file_size BIGINT NOT NULL,
+    ref_count INTEGER NOT NULL DEFAULT 1,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_storage_blobs_storage_path ON storage_blobs(storage_path);
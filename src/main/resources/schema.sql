@@ -65,6 +65,7 @@ CREATE TABLE IF NOT EXISTS public.messages (
 );
 CREATE INDEX idx_messages_created_at ON public.messages USING btree (created_at DESC);
 CREATE INDEX idx_messages_group_id ON public.messages USING btree (group_id);
+CREATE INDEX idx_messages_group_created_id ON public.messages USING btree (group_id, created_at DESC, id DESC);
 CREATE INDEX idx_messages_sender_id ON public.messages USING btree (sender_id);
 
 
@@ -104,6 +105,8 @@ CREATE TABLE IF NOT EXISTS public.message_attachments (
 	file_url varchar(500) NOT NULL,
 	storage_path varchar(500) NOT NULL,
 	thumbnail_url varchar(500) NULL,
+	preview_url varchar(500) NULL,
+	placeholder text NULL,
 	created_at timestamp DEFAULT CURRENT_TIMESTAMP NULL,
 	width int4 NULL,
 	height int4 NULL,
@@ -113,6 +116,41 @@ CREATE TABLE IF NOT EXISTS public.message_attachments (
 	CONSTRAINT message_attachments_message_id_fkey FOREIGN KEY (message_id) REFERENCES public.messages(id) ON DELETE CASCADE
 );
 CREATE INDEX idx_message_attachments_message_id ON public.message_attachments USING btree (message_id);
+CREATE INDEX idx_message_attachments_pending_thumbnail ON public.message_attachments USING btree (id) WHERE thumbnail_url IS NULL AND file_type LIKE 'image/%';
+
+
+-- public.storage_blobs definition (content-addressed storage mode)
+
+-- Drop table
+
+-- DROP TABLE public.storage_blobs;
+
+CREATE TABLE IF NOT EXISTS public.storage_blobs (
+	id bigserial NOT NULL,
+	hash varchar(64) NOT NULL,
+	storage_path varchar(500) NOT NULL,
+	file_size int8 NOT NULL,
+	ref_count int4 DEFAULT 1 NOT NULL,
+	created_at timestamp DEFAULT CURRENT_TIMESTAMP NULL,
+	CONSTRAINT storage_blobs_pkey PRIMARY KEY (id),
+	CONSTRAINT storage_blobs_hash_key UNIQUE (hash)
+);
+CREATE INDEX idx_storage_blobs_storage_path ON public.storage_blobs USING btree (storage_path);
+
+
+-- public.sse_event_overflow definition (sse.event-bus=postgres: envelopes too large for a NOTIFY payload)
+
+-- Drop table
+
+-- DROP TABLE public.sse_event_overflow;
+
+CREATE TABLE IF NOT EXISTS public.sse_event_overflow (
+	id bigserial NOT NULL,
+	payload text NOT NULL,
+	created_at timestamp DEFAULT CURRENT_TIMESTAMP NOT NULL,
+	CONSTRAINT sse_event_overflow_pkey PRIMARY KEY (id)
+);
+CREATE INDEX idx_sse_event_overflow_created_at ON public.sse_event_overflow USING btree (created_at);
 -- Sample data
 delete from public.users;
 INSERT INTO public.users (username,display_name,avatar_url,status,created_at,updated_at,"password",password_plain,"role",email,phone,"position") VALUES
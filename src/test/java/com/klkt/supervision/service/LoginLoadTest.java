@@ -0,0 +1,183 @@
+package com.klkt.supervision.service;
+
+import com.klkt.supervision.config.WorkerPoolProperties;
+import com.klkt.supervision.config.WorkerPools;
+import com.klkt.supervision.exception.GlobalExceptionHandler;
+import com.klkt.supervision.exception.ServiceBusyException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+
+/**
+ * Load harness for logins: a burst of concurrent BCrypt logins against a real Reactor Netty server while a
+ * cheap endpoint is pinged, once with hashing on the password pool and once inline on the event loop.
+ * Busy logins are answered by GlobalExceptionHandler as in the application. Run with
+ * {@code mvn test -Dtest=LoginLoadTest -Dloadtests=true [-Dlogins=200]}.
+ */
+@EnabledIfSystemProperty(named = "loadtests", matches = "true")
+class LoginLoadTest {
+
+    private static final String PASSWORD = "correct horse battery staple";
+    private static final Duration PING_INTERVAL = Duration.ofMillis(10);
+    private static final int THREADS = 2;
+    private static final int QUEUE_SIZE = 64;
+
+    private final int logins = Integer.getInteger("logins", 200);
+
+    private BCryptPasswordEncoder encoder;
+    private WorkerPools workerPools;
+    private PasswordHashingService hashingService;
+    private String hash;
+    private DisposableServer server;
+    private WebClient client;
+
+    @BeforeEach
+    void startServer() {
+        encoder = new BCryptPasswordEncoder();
+        hash = encoder.encode(PASSWORD);
+
+        WorkerPoolProperties properties = new WorkerPoolProperties();
+        properties.setPassword(new WorkerPoolProperties.Pool(THREADS, QUEUE_SIZE));
+        workerPools = new WorkerPools(properties);
+        hashingService = new PasswordHashingService(encoder, workerPools);
+        GlobalExceptionHandler exceptionHandler = new GlobalExceptionHandler();
+
+        RouterFunction<ServerResponse> routes = RouterFunctions
+                .route(POST("/login"), request -> hashingService.matches(PASSWORD, hash)
+                        .flatMap(matches -> ServerResponse.ok().bodyValue(matches))
+                        .onErrorResume(ServiceBusyException.class, e -> exceptionHandler.handleServiceBusyException(e)
+                                .flatMap(entity -> ServerResponse.status(entity.getStatusCode())
+                                        .headers(headers -> headers.addAll(entity.getHeaders()))
+                                        .bodyValue(entity.getBody()))))
+                // What logins did before the password pool: BCrypt on the Netty thread
+                .andRoute(POST("/login-inline"), request -> ServerResponse.ok().bodyValue(encoder.matches(PASSWORD, hash)))
+                .andRoute(GET("/ping"), request -> ServerResponse.ok().bodyValue("pong"));
+
+        server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .handle(new ReactorHttpHandlerAdapter(RouterFunctions.toHttpHandler(routes)))
+                .bindNow();
+        client = WebClient.create("http://127.0.0.1:" + server.port());
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.disposeNow();
+        workerPools.shutdown();
+    }
+
+    @Test
+    void saturatedPasswordPoolAnswers503WithRetryAfter() {
+        AtomicLong maxActive = new AtomicLong();
+        AtomicLong maxInFlight = new AtomicLong();
+        Disposable sampler = Flux.interval(Duration.ofMillis(1))
+                .onBackpressureDrop()
+                .subscribe(tick -> {
+                    Map<String, Object> stats = workerPools.password().getStats();
+                    maxActive.accumulateAndGet((Long) stats.get("active"), Math::max);
+                    maxInFlight.accumulateAndGet((Long) stats.get("active") + (Long) stats.get("queued"), Math::max);
+                });
+
+        List<Response> responses;
+        try {
+            responses = run("/login").responses();
+        } finally {
+            sampler.dispose();
+        }
+
+        List<Response> accepted = responses.stream().filter(response -> response.status() == 200).toList();
+        List<Response> busy = responses.stream().filter(response -> response.status() == 503).toList();
+        assertEquals(logins, accepted.size() + busy.size(), "unexpected statuses in " + responses);
+
+        // The burst is larger than threads + queue: the surplus is turned away, told when to retry
+        assertTrue(!busy.isEmpty(), "no login rejected, the burst did not saturate the pool");
+        assertTrue(busy.stream().allMatch(response -> String.valueOf(PasswordHashingService.RETRY_AFTER_SECONDS)
+                .equals(response.retryAfter())), "503 without Retry-After: " + busy);
+        assertEquals((long) busy.size(), workerPools.password().getStats().get("rejected"));
+
+        assertTrue(maxActive.get() <= THREADS, "active " + maxActive.get() + " > " + THREADS + " threads");
+        // A task may sit in the queue for a moment after a thread freed up, so the bound is on both together
+        assertTrue(maxInFlight.get() <= THREADS + QUEUE_SIZE,
+                "active + queued " + maxInFlight.get() + " > " + (THREADS + QUEUE_SIZE));
+    }
+
+    @Test
+    void pingStaysFastWhileLoginsHashOnThePasswordPool() {
+        Result pooled = run("/login");
+        Result inline = run("/login-inline");
+
+        assertTrue(pooled.pingMillis().size() > 0, "no ping completed during the pooled logins");
+        long pooledP99 = percentile(pooled.pingMillis(), 99);
+        long inlineP99 = percentile(inline.pingMillis(), 99);
+        assertTrue(pooledP99 < inlineP99,
+                "ping p99 " + pooledP99 + " ms with the password pool, " + inlineP99 + " ms inline");
+    }
+
+    private Result run(String loginPath) {
+        Mono<List<Response>> loginBurst = Flux.range(0, logins)
+                .flatMap(i -> client.post().uri(loginPath)
+                        .exchangeToMono(response -> response.releaseBody()
+                                .thenReturn(new Response(response.statusCode().value(),
+                                        response.headers().asHttpHeaders().getFirst(HttpHeaders.RETRY_AFTER)))),
+                        logins)
+                .collectList()
+                .cache();
+
+        List<Long> pingMillis = Collections.synchronizedList(new ArrayList<>());
+        Flux.interval(PING_INTERVAL)
+                .onBackpressureDrop()
+                .concatMap(tick -> {
+                    long sentAt = System.nanoTime();
+                    return client.get().uri("/ping")
+                            .retrieve()
+                            .bodyToMono(String.class)
+                            .doOnNext(body -> pingMillis.add((System.nanoTime() - sentAt) / 1_000_000));
+                })
+                .takeUntilOther(loginBurst)
+                .blockLast(Duration.ofMinutes(5));
+
+        return new Result(loginBurst.block(Duration.ofMinutes(5)), new ArrayList<>(pingMillis));
+    }
+
+    private static long percentile(List<Long> values, int percent) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        if (sorted.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        int index = (int) Math.ceil(percent / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index));
+    }
+
+    private record Response(int status, String retryAfter) {
+    }
+
+    private record Result(List<Response> responses, List<Long> pingMillis) {
+    }
+}
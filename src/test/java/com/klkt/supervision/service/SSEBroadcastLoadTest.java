@@ -0,0 +1,127 @@
+package com.klkt.supervision.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.klkt.supervision.config.SSEProperties;
+import com.klkt.supervision.dto.AttachmentResponse;
+import com.klkt.supervision.dto.MessageResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import reactor.core.Disposable;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * JMH-style harness for SSE fan-out: one new_message event to every connected user, timed after a warmup.
+ * Both sides do the full fan-out through SSEService: sendToUsers serializes the event once for all recipients,
+ * one sendToUser call per recipient serializes it for each of them as the fan-out did before. Run with
+ * {@code mvn test -Dtest=SSEBroadcastLoadTest -Dloadtests=true [-Drecipients=2000 -Devents=500]}.
+ */
+@EnabledIfSystemProperty(named = "loadtests", matches = "true")
+class SSEBroadcastLoadTest {
+
+    private static final int WARMUP_EVENTS = 100;
+
+    private final int recipients = Integer.getInteger("recipients", 2000);
+    private final int events = Integer.getInteger("events", 500);
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final AtomicLong received = new AtomicLong();
+    private final List<Disposable> subscriptions = new ArrayList<>();
+    private SSEService sseService;
+    private List<Long> userIds;
+
+    @BeforeEach
+    void connectRecipients() {
+        SSEEventBus eventBus = new LocalSSEEventBus();
+        SSEProperties properties = new SSEProperties();
+        sseService = new SSEService(objectMapper, new GroupMembershipIndex(null, null, eventBus), properties, eventBus);
+        sseService.start();
+
+        userIds = LongStream.rangeClosed(1, recipients).boxed().collect(Collectors.toList());
+        userIds.forEach(userId -> subscriptions.add(sseService.subscribe(userId, null)
+                .filter(event -> "new_message".equals(event.event()))
+                .subscribe(event -> received.incrementAndGet())));
+    }
+
+    @AfterEach
+    void disconnect() {
+        subscriptions.forEach(Disposable::dispose);
+        sseService.stop();
+    }
+
+    @Test
+    void serializeOncePerEvent() throws Exception {
+        MessageResponse message = sampleMessage();
+
+        for (int i = 0; i < WARMUP_EVENTS; i++) {
+            sendShared(message);
+            sendPerRecipient(message);
+        }
+
+        received.set(0);
+        long sharedNanos = time(() -> sendShared(message));
+        assertEquals((long) events * recipients, received.get());
+
+        received.set(0);
+        long perRecipientNanos = time(() -> sendPerRecipient(message));
+        assertEquals((long) events * recipients, received.get());
+
+        assertTrue(sharedNanos < perRecipientNanos, String.format(
+                "serializing once took %d ms for %d events x %d recipients, per recipient %d ms",
+                sharedNanos / 1_000_000, events, recipients, perRecipientNanos / 1_000_000));
+    }
+
+    private void sendShared(MessageResponse message) {
+        sseService.sendToUsers(userIds, "new_message", message);
+    }
+
+    // The old fan-out: one serialization per connected user
+    private void sendPerRecipient(MessageResponse message) {
+        userIds.forEach(userId -> sseService.sendToUser(userId, "new_message", message));
+    }
+
+    private long time(Runnable event) {
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < events; i++) {
+            event.run();
+        }
+        return System.nanoTime() - startedAt;
+    }
+
+    private static MessageResponse sampleMessage() {
+        List<AttachmentResponse> attachments = new ArrayList<>();
+        for (long id = 1; id <= 3; id++) {
+            attachments.add(AttachmentResponse.builder()
+                    .id(id)
+                    .fileName("IMG_" + id + ".jpg")
+                    .fileType("image/jpeg")
+                    .fileSize(2_400_000L)
+                    .fileUrl("/api/files/groups/G001/2026/10/18/message_42/IMG_" + id + ".jpg")
+                    .placeholder("data:image/jpeg;base64," + "A".repeat(600))
+                    .width(4032)
+                    .height(3024)
+                    .thumbnailStatus(ThumbnailService.STATUS_PENDING)
+                    .build());
+        }
+        return MessageResponse.builder()
+                .id(42L)
+                .groupId(7L)
+                .senderId(3L)
+                .senderName("Site supervisor")
+                .content("Shift report with photos of the north gate")
+                .messageType("IMAGE")
+                .attachments(attachments)
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+}
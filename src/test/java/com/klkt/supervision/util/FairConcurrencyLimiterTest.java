@@ -0,0 +1,115 @@
+package com.klkt.supervision.util;
+
+import com.klkt.supervision.exception.ServiceBusyException;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+/**
+ * Tasks are held open by sinks, so permits are handed over synchronously and every ordering is deterministic
+ */
+class FairConcurrencyLimiterTest {
+
+    private final List<String> started = new ArrayList<>();
+    private final Map<String, Sinks.Empty<Void>> completions = new HashMap<>();
+    private final List<Throwable> errors = new ArrayList<>();
+
+    @Test
+    void permitsGoRoundRobinOverKeys() {
+        FairConcurrencyLimiter limiter = new FairConcurrencyLimiter("test", 1, 100);
+
+        // One user queues four uploads, two others arrive after them with one each
+        for (String name : List.of("hog-1", "hog-2", "hog-3", "hog-4")) {
+            submit(limiter, "hog", name);
+        }
+        submit(limiter, "alice", "alice-1");
+        submit(limiter, "bob", "bob-1");
+        assertEquals(List.of("hog-1"), started);
+
+        // Completing the running task hands its permit to the next waiter
+        for (int i = 0; i < 5; i++) {
+            completions.get(started.get(started.size() - 1)).tryEmitEmpty();
+        }
+
+        assertEquals(List.of("hog-1", "hog-2", "alice-1", "bob-1", "hog-3", "hog-4"), started);
+    }
+
+    @Test
+    void cancelledWaiterLeavesQueueWithoutTakingPermit() {
+        FairConcurrencyLimiter limiter = new FairConcurrencyLimiter("test", 1, 10);
+        Sinks.Empty<Void> running = Sinks.empty();
+        limiter.run("alice", task("running", running)).subscribe();
+
+        Disposable waiting = limiter.run("bob", task("cancelled", Sinks.empty())).subscribe();
+        assertEquals(1, limiter.getStats().get("queued"));
+        waiting.dispose();
+        assertEquals(0, limiter.getStats().get("queued"));
+        assertEquals(0, limiter.getStats().get("queuedKeys"));
+
+        running.tryEmitEmpty();
+        assertEquals(0, limiter.getStats().get("active"));
+
+        // The permit is free again: the next task starts right away
+        limiter.run("carol", task("next", Sinks.empty())).subscribe();
+        assertEquals(List.of("running", "next"), started);
+        assertEquals(1, limiter.getStats().get("active"));
+    }
+
+    @Test
+    void cancelledRunningTaskReturnsItsPermit() {
+        FairConcurrencyLimiter limiter = new FairConcurrencyLimiter("test", 1, 10);
+        Disposable running = limiter.run("alice", task("running", Sinks.empty())).subscribe();
+        limiter.run("bob", task("waiting", Sinks.empty())).subscribe();
+
+        running.dispose();
+
+        assertEquals(List.of("running", "waiting"), started);
+        assertEquals(1, limiter.getStats().get("active"));
+        assertEquals(0, limiter.getStats().get("queued"));
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() {
+        FairConcurrencyLimiter limiter = new FairConcurrencyLimiter("test", 1, 2);
+        Sinks.Empty<Void> running = submit(limiter, "alice", "running");
+        submit(limiter, "alice", "queued-1");
+        submit(limiter, "bob", "queued-2");
+
+        submit(limiter, "carol", "rejected");
+
+        assertEquals(1, errors.size());
+        assertInstanceOf(ServiceBusyException.class, errors.get(0));
+        assertEquals(1L, limiter.getStats().get("rejected"));
+        assertFalse(started.contains("rejected"));
+
+        // Room in the queue again once a waiter got the permit
+        running.tryEmitEmpty();
+        submit(limiter, "carol", "accepted");
+        assertEquals(1, errors.size());
+        assertEquals(2, limiter.getStats().get("queued"));
+    }
+
+    private Sinks.Empty<Void> submit(FairConcurrencyLimiter limiter, String key, String name) {
+        Sinks.Empty<Void> done = Sinks.empty();
+        limiter.run(key, task(name, done)).subscribe(value -> { }, errors::add);
+        completions.put(name, done);
+        return done;
+    }
+
+    private Mono<Void> task(String name, Sinks.Empty<Void> done) {
+        return Mono.defer(() -> {
+            started.add(name);
+            return done.asMono();
+        });
+    }
+}
@@ -0,0 +1,221 @@
+package com.klkt.supervision.util;
+
+import com.klkt.supervision.dto.MediaMetadata;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * The probes see uploads as they arrive from the network, so every fixture is fed in chunks of odd sizes
+ * that split box headers, sizes and payloads at arbitrary points.
+ */
+class MediaMetadataProbeTest {
+
+    private static final int IDENTITY = 0x00010000;
+    private static final int MINUS_ONE = 0xFFFF0000;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 7, 13, 61, 4096})
+    void mp4WithMoovBeforeMdat(int chunkSize) {
+        byte[] file = concat(ftyp(), moov(mvhdV0(1000, 12_345), trak(tkhdV0(1920, 1080, false))), mdat(5000));
+
+        MediaMetadata metadata = probe("clip.mp4", file, chunkSize);
+
+        assertEquals(1920, metadata.getWidth());
+        assertEquals(1080, metadata.getHeight());
+        assertEquals(12_345, metadata.getDuration());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 7, 13, 61, 4096})
+    void mp4WithMoovAfterMdat(int chunkSize) {
+        byte[] file = concat(ftyp(), mdat(5000), moov(mvhdV0(600, 3000), trak(tkhdV0(640, 480, false))));
+
+        MediaMetadata metadata = probe("clip.mov", file, chunkSize);
+
+        assertEquals(640, metadata.getWidth());
+        assertEquals(480, metadata.getHeight());
+        assertEquals(5000, metadata.getDuration());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 7, 13, 61, 4096})
+    void mp4WithVersion1BoxesAndLargeSizeMdat(int chunkSize) {
+        byte[] file = concat(ftyp(), largeMdat(3000), moov(mvhdV1(90_000, 90_000L * 7200), trak(tkhdV1(3840, 2160))));
+
+        MediaMetadata metadata = probe("clip.mp4", file, chunkSize);
+
+        assertEquals(3840, metadata.getWidth());
+        assertEquals(2160, metadata.getHeight());
+        assertEquals(7_200_000, metadata.getDuration());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 7, 13, 61, 4096})
+    void mp4WithRotatedTrackSwapsWidthAndHeight(int chunkSize) {
+        // An audio track without size comes first, the rotated video track after it
+        byte[] file = concat(ftyp(), moov(mvhdV0(1000, 2000),
+                trak(tkhdV0(0, 0, false)),
+                trak(tkhdV0(1920, 1080, true))), mdat(100));
+
+        MediaMetadata metadata = probe("portrait.mp4", file, chunkSize);
+
+        assertEquals(1080, metadata.getWidth());
+        assertEquals(1920, metadata.getHeight());
+        assertEquals(2000, metadata.getDuration());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 7, 13, 61, 4096})
+    void mp4WithoutMoovHasNoMetadata(int chunkSize) {
+        MediaMetadata metadata = probe("broken.mp4", concat(ftyp(), mdat(500)), chunkSize);
+
+        assertNull(metadata.getWidth());
+        assertNull(metadata.getHeight());
+        assertNull(metadata.getDuration());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 7, 13, 61, 4096})
+    void jpegDimensions(int chunkSize) throws IOException {
+        MediaMetadata metadata = probe("photo.JPG", image("jpg", 37, 23), chunkSize);
+
+        assertEquals(37, metadata.getWidth());
+        assertEquals(23, metadata.getHeight());
+        assertNull(metadata.getDuration());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 7, 13, 61, 4096})
+    void pngDimensions(int chunkSize) throws IOException {
+        MediaMetadata metadata = probe("screen.png", image("png", 101, 7), chunkSize);
+
+        assertEquals(101, metadata.getWidth());
+        assertEquals(7, metadata.getHeight());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"notes.txt", "archive.zip", "no-extension"})
+    void otherFilesAreNotProbed(String fileName) {
+        assertInstanceOf(NoMetadataProbe.class, MediaMetadataProbe.forFileName(fileName));
+    }
+
+    private static MediaMetadata probe(String fileName, byte[] content, int chunkSize) {
+        MediaMetadataProbe probe = MediaMetadataProbe.forFileName(fileName);
+        for (int offset = 0; offset < content.length; offset += chunkSize) {
+            byte[] chunk = Arrays.copyOfRange(content, offset, Math.min(content.length, offset + chunkSize));
+            probe.accept(DefaultDataBufferFactory.sharedInstance.wrap(chunk));
+        }
+        return probe.result();
+    }
+
+    private static byte[] image(String format, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    // ----- ISO BMFF fixtures -----
+
+    private static byte[] box(String type, byte[]... children) {
+        byte[] payload = concat(children);
+        return ByteBuffer.allocate(8 + payload.length)
+                .putInt(8 + payload.length)
+                .put(type.getBytes(StandardCharsets.ISO_8859_1))
+                .put(payload)
+                .array();
+    }
+
+    private static byte[] ftyp() {
+        return box("ftyp", "isom".getBytes(StandardCharsets.ISO_8859_1), new byte[4]);
+    }
+
+    private static byte[] mdat(int size) {
+        return box("mdat", new byte[size]);
+    }
+
+    // size field 1, the real size in the 64 bits after the type
+    private static byte[] largeMdat(int size) {
+        return ByteBuffer.allocate(16 + size)
+                .putInt(1)
+                .put("mdat".getBytes(StandardCharsets.ISO_8859_1))
+                .putLong(16 + size)
+                .array();
+    }
+
+    private static byte[] moov(byte[]... children) {
+        return box("moov", children);
+    }
+
+    private static byte[] trak(byte[] tkhd) {
+        return box("trak", tkhd);
+    }
+
+    private static byte[] mvhdV0(int timescale, int duration) {
+        ByteBuffer payload = ByteBuffer.allocate(100);
+        payload.putInt(0);                       // version 0, flags
+        payload.putInt(0).putInt(0);             // creation, modification
+        payload.putInt(timescale).putInt(duration);
+        return box("mvhd", payload.array());
+    }
+
+    private static byte[] mvhdV1(int timescale, long duration) {
+        ByteBuffer payload = ByteBuffer.allocate(112);
+        payload.putInt(0x01000000);              // version 1, flags
+        payload.putLong(0).putLong(0);           // creation, modification
+        payload.putInt(timescale).putLong(duration);
+        return box("mvhd", payload.array());
+    }
+
+    private static byte[] tkhdV0(int width, int height, boolean rotated) {
+        ByteBuffer payload = ByteBuffer.allocate(84);
+        payload.putInt(0x00000003);              // version 0, flags enabled | in movie
+        payload.putInt(0).putInt(0);             // creation, modification
+        payload.putInt(1).putInt(0).putInt(0);   // track id, reserved, duration
+        payload.putLong(0);                      // reserved
+        payload.putShort((short) 0).putShort((short) 0).putShort((short) 0).putShort((short) 0);
+        putMatrix(payload, rotated);
+        payload.putInt(width << 16).putInt(height << 16);
+        return box("tkhd", payload.array());
+    }
+
+    private static byte[] tkhdV1(int width, int height) {
+        ByteBuffer payload = ByteBuffer.allocate(96);
+        payload.putInt(0x01000003);              // version 1
+        payload.putLong(0).putLong(0);           // creation, modification
+        payload.putInt(1).putInt(0).putLong(0);  // track id, reserved, duration
+        payload.putLong(0);                      // reserved
+        payload.putShort((short) 0).putShort((short) 0).putShort((short) 0).putShort((short) 0);
+        putMatrix(payload, false);
+        payload.putInt(width << 16).putInt(height << 16);
+        return box("tkhd", payload.array());
+    }
+
+    // a b u / c d v / x y w, 90 degree rotation is (0 1 / -1 0)
+    private static void putMatrix(ByteBuffer payload, boolean rotated) {
+        payload.putInt(rotated ? 0 : IDENTITY).putInt(rotated ? IDENTITY : 0).putInt(0);
+        payload.putInt(rotated ? MINUS_ONE : 0).putInt(rotated ? 0 : IDENTITY).putInt(0);
+        payload.putInt(0).putInt(0).putInt(0x40000000);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+}